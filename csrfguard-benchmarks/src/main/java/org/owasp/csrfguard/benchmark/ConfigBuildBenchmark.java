@@ -0,0 +1,132 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.owasp.csrfguard.config.PropertiesConfigurationProvider;
+
+/**
+ * Building a PropertiesConfigurationProvider from 100, 1000 and 10000 property keys, like
+ * startup does, and rebuilding it from a previous provider, like a reload of the config overlay
+ * does.  A quarter of the keys each are protected pages, unprotected pages, action parameters
+ * (spread over one action per hundred keys) and keys of the application that CsrfGuard ignores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigBuildBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int keys;
+
+	private Properties properties;
+
+	/**
+	 * the same properties except one protected page
+	 */
+	private Properties pageChangedProperties;
+
+	private PropertiesConfigurationProvider previous;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.properties = CsrfGuardBenchmarkSupport.baseProperties();
+		String contextPath = MockHttpServletRequest.CONTEXT_PATH;
+		int actions = Math.max(1, this.keys / 100);
+		for (int i = 0; i < actions; i++) {
+			this.properties.setProperty("org.owasp.csrfguard.action.Empty" + i, "org.owasp.csrfguard.action.Empty");
+		}
+		for (int i = 0; i < this.keys; i++) {
+			switch (i % 4) {
+				case 0:
+					this.properties.setProperty("org.owasp.csrfguard.protected.Page" + i, contextPath + "/page" + i + ".html");
+					break;
+				case 1:
+					this.properties.setProperty("org.owasp.csrfguard.unprotected.Page" + i, contextPath + "/public" + i + "/*");
+					break;
+				case 2:
+					this.properties.setProperty("org.owasp.csrfguard.action.Empty" + (i % actions) + ".Param" + i, "value" + i);
+					break;
+				default:
+					this.properties.setProperty("com.example.application.setting" + i, "value" + i);
+					break;
+			}
+		}
+		this.pageChangedProperties = new Properties();
+		this.pageChangedProperties.putAll(this.properties);
+		this.pageChangedProperties.setProperty("org.owasp.csrfguard.protected.Page0", contextPath + "/changed.html");
+
+		this.previous = new PropertiesConfigurationProvider(this.properties);
+	}
+
+	/**
+	 * startup: everything is built, including the actions, the page sets and the PRNG
+	 * @return the provider
+	 */
+	@Benchmark
+	public PropertiesConfigurationProvider build() {
+		return new PropertiesConfigurationProvider(this.properties);
+	}
+
+	/**
+	 * reload when nothing changed: everything is reused from the previous provider
+	 * @return the provider
+	 */
+	@Benchmark
+	public PropertiesConfigurationProvider reloadUnchanged() {
+		return new PropertiesConfigurationProvider(this.properties, this.previous);
+	}
+
+	/**
+	 * reload when one protected page changed: the protected pages are built again, the rest is reused
+	 * @return the provider
+	 */
+	@Benchmark
+	public PropertiesConfigurationProvider reloadPageChanged() {
+		return new PropertiesConfigurationProvider(this.pageChangedProperties, this.previous);
+	}
+
+}
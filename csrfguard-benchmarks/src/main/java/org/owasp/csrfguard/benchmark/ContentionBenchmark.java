@@ -0,0 +1,125 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.CsrfGuardException;
+import org.owasp.csrfguard.action.Rotate;
+import org.owasp.csrfguard.util.RandomGenerator;
+
+/**
+ * Contention profile: 8 threads, each with its own session like concurrent users, through the
+ * state they share, i.e. the configuration cache, the page pattern cache and the PRNG.  Compare
+ * the throughput with a single thread (-t 1) to see how the request pipeline scales.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ContentionBenchmark {
+
+	/**
+	 * the configuration, one per fork
+	 */
+	@State(Scope.Benchmark)
+	public static class Configuration {
+
+		@Param({ "false", "true" })
+		public boolean tokenPerPage;
+
+		final Rotate rotate = new Rotate();
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Map<String, String> overrides = new HashMap<String, String>();
+			overrides.put("org.owasp.csrfguard.TokenPerPage", Boolean.toString(this.tokenPerPage));
+			overrides.put("org.owasp.csrfguard.unprotected.Static", MockHttpServletRequest.CONTEXT_PATH + "/static/*");
+			overrides.put("org.owasp.csrfguard.unprotected.Images", "^" + MockHttpServletRequest.CONTEXT_PATH + "/images/.*$");
+			CsrfGuardBenchmarkSupport.configure(overrides);
+			this.rotate.setName("Rotate");
+		}
+	}
+
+	/**
+	 * the session and request of a thread
+	 */
+	@State(Scope.Thread)
+	public static class User {
+
+		MockHttpServletRequest validRequest;
+
+		MockHttpServletRequest rotateRequest;
+
+		MockHttpServletResponse response;
+
+		@Setup(Level.Trial)
+		public void setup(@SuppressWarnings("unused") Configuration configuration) {
+			this.validRequest = CsrfGuardBenchmarkSupport.newValidRequest(CsrfGuardBenchmarkSupport.newSession(), false);
+			this.rotateRequest = CsrfGuardBenchmarkSupport.newValidRequest(CsrfGuardBenchmarkSupport.newSession(), false);
+			this.response = new MockHttpServletResponse();
+		}
+	}
+
+	@Benchmark
+	public boolean isValidRequest(User user) {
+		return CsrfGuard.getInstance().isValidRequest(user.validRequest, user.response);
+	}
+
+	@Benchmark
+	public String generateRandomId(@SuppressWarnings("unused") Configuration configuration) {
+		CsrfGuard csrfGuard = CsrfGuard.getInstance();
+		return RandomGenerator.generateRandomId(csrfGuard.getPrng(), csrfGuard.getTokenLength());
+	}
+
+	@Benchmark
+	public Object rotate(Configuration configuration, User user) throws CsrfGuardException {
+		configuration.rotate.execute(user.rotateRequest, user.response, null, CsrfGuard.getInstance());
+		return user.rotateRequest.getSession(false).getAttribute(CsrfGuard.getInstance().getSessionKey());
+	}
+
+}
@@ -0,0 +1,138 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.util.Map;
+import java.util.Properties;
+
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.config.PropertiesConfigurationProviderFactory;
+import org.owasp.csrfguard.servlet.JavaScriptServlet;
+
+/**
+ * Configures the CsrfGuard singleton for a benchmark, and creates sessions and requests
+ * that carry valid tokens.
+ * <p />
+ * CsrfGuard is configured once per JVM (the PropertiesConfigurationProviderFactory caches
+ * the provider), so each benchmark runs in its own fork and configures it in a trial setup.
+ */
+public final class CsrfGuardBenchmarkSupport {
+
+	/**
+	 * the page all benchmark requests post to, it is protected
+	 */
+	public static final String PROTECTED_PAGE = "/protect.html";
+
+	/**
+	 * the path of the javascript servlet
+	 */
+	public static final String JAVASCRIPT_SERVLET_PATH = "/JavaScriptServlet";
+
+	private CsrfGuardBenchmarkSupport() {
+	}
+
+	/**
+	 * @return the properties every benchmark starts with: session token only, the Empty action
+	 * (at least one action is required), no rotation, the benchmark page protected
+	 */
+	public static Properties baseProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("org.owasp.csrfguard.configuration.provider.factory", PropertiesConfigurationProviderFactory.class.getName());
+		properties.setProperty("org.owasp.csrfguard.Logger", "org.owasp.csrfguard.log.JavaLogger");
+		properties.setProperty("org.owasp.csrfguard.TokenName", "OWASP_CSRFTOKEN");
+		properties.setProperty("org.owasp.csrfguard.TokenLength", "32");
+		properties.setProperty("org.owasp.csrfguard.PRNG", "SHA1PRNG");
+		properties.setProperty("org.owasp.csrfguard.PRNG.Provider", "SUN");
+		properties.setProperty("org.owasp.csrfguard.Rotate", "false");
+		properties.setProperty("org.owasp.csrfguard.TokenPerPage", "false");
+		properties.setProperty("org.owasp.csrfguard.Ajax", "false");
+		properties.setProperty("org.owasp.csrfguard.UseNewTokenLandingPage", "false");
+		properties.setProperty("org.owasp.csrfguard.action.Empty", "org.owasp.csrfguard.action.Empty");
+		properties.setProperty("org.owasp.csrfguard.protected.Protect", MockHttpServletRequest.CONTEXT_PATH + PROTECTED_PAGE);
+		return properties;
+	}
+
+	/**
+	 * configure CsrfGuard with the base properties and the overrides, initialize the
+	 * javascript servlet and build the configuration so the benchmark measures the steady state
+	 * @param overrides properties to set on top of the base properties, may be null
+	 * @return the javascript servlet, initialized
+	 */
+	public static JavaScriptServlet configure(Map<String, String> overrides) {
+		Properties properties = baseProperties();
+		if (overrides != null) {
+			for (Map.Entry<String, String> entry : overrides.entrySet()) {
+				properties.setProperty(entry.getKey(), entry.getValue());
+			}
+		}
+		try {
+			CsrfGuard.load(properties);
+		} catch (Exception e) {
+			throw new RuntimeException("could not configure CsrfGuard", e);
+		}
+
+		JavaScriptServlet javaScriptServlet = new JavaScriptServlet();
+		javaScriptServlet.init(new MockServletConfig());
+
+		//the configuration is only cached once the javascript params are read
+		CsrfGuard.getInstance().getJavascriptTemplateCode();
+		return javaScriptServlet;
+	}
+
+	/**
+	 * @return a session which has the session token, and the page token of the protected page
+	 * if token per page is enabled
+	 */
+	public static MockHttpSession newSession() {
+		MockHttpSession session = new MockHttpSession();
+		MockHttpServletRequest request = new MockHttpServletRequest().setServletPath(PROTECTED_PAGE).setSession(session);
+		CsrfGuard.getInstance().updateTokens(request);
+		return session;
+	}
+
+	/**
+	 * @param session
+	 * @param ajax true to send the token in a header like the javascript does for XHRs,
+	 * otherwise it is sent as a parameter like a form post
+	 * @return a post to the protected page with the token that CsrfGuard expects
+	 */
+	public static MockHttpServletRequest newValidRequest(MockHttpSession session, boolean ajax) {
+		CsrfGuard csrfGuard = CsrfGuard.getInstance();
+		MockHttpServletRequest request = new MockHttpServletRequest().setServletPath(PROTECTED_PAGE).setSession(session);
+		String token = csrfGuard.getTokenValue(request);
+		if (ajax) {
+			request.setHeader("X-Requested-With", csrfGuard.getJavascriptXrequestedWith());
+			request.setHeader(csrfGuard.getTokenName(), token);
+		} else {
+			request.setParameter(csrfGuard.getTokenName(), token);
+		}
+		return request;
+	}
+
+}
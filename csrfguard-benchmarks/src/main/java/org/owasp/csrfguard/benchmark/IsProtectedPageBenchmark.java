@@ -0,0 +1,132 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.owasp.csrfguard.CsrfGuard;
+
+/**
+ * CsrfGuard.isProtectedPage() with 10, 100 and 1000 protected page patterns.  A quarter of
+ * the patterns each are exact paths, path wildcards (/dir/*), extensions (*.ext) and regexes
+ * (^...$), like a large config would mix them.  Every uri that is not an exact match is
+ * compared with all the patterns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IsProtectedPageBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int patterns;
+
+	private String exactUri;
+
+	private String wildcardUri;
+
+	private String extensionUri;
+
+	private String regexUri;
+
+	private String unprotectedUri;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		String contextPath = MockHttpServletRequest.CONTEXT_PATH;
+		Map<String, String> overrides = new HashMap<String, String>();
+		for (int i = 0; i < this.patterns; i++) {
+			String pattern = null;
+			switch (i % 4) {
+				case 0:
+					pattern = contextPath + "/page" + i + ".html";
+					this.exactUri = pattern;
+					break;
+				case 1:
+					pattern = contextPath + "/dir" + i + "/*";
+					this.wildcardUri = contextPath + "/dir" + i + "/index.html";
+					break;
+				case 2:
+					pattern = "*.ext" + i;
+					this.extensionUri = contextPath + "/file.ext" + i;
+					break;
+				default:
+					pattern = "^" + contextPath + "/regex" + i + "/.*$";
+					this.regexUri = contextPath + "/regex" + i + "/page.html";
+					break;
+			}
+			overrides.put("org.owasp.csrfguard.protected.Page" + i, pattern);
+		}
+		this.unprotectedUri = contextPath + "/unprotected/page.html";
+		overrides.put("org.owasp.csrfguard.Protect", "true");
+		CsrfGuardBenchmarkSupport.configure(overrides);
+	}
+
+	@Benchmark
+	public boolean exact() {
+		return CsrfGuard.getInstance().isProtectedPage(this.exactUri);
+	}
+
+	@Benchmark
+	public boolean wildcard() {
+		return CsrfGuard.getInstance().isProtectedPage(this.wildcardUri);
+	}
+
+	@Benchmark
+	public boolean extension() {
+		return CsrfGuard.getInstance().isProtectedPage(this.extensionUri);
+	}
+
+	@Benchmark
+	public boolean regex() {
+		return CsrfGuard.getInstance().isProtectedPage(this.regexUri);
+	}
+
+	@Benchmark
+	public boolean unprotected() {
+		return CsrfGuard.getInstance().isProtectedPage(this.unprotectedUri);
+	}
+
+}
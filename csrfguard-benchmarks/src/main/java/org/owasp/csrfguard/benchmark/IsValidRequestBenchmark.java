@@ -0,0 +1,122 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.owasp.csrfguard.CsrfGuard;
+
+/**
+ * CsrfGuard.isValidRequest() for a post to a protected page, with the token in the session
+ * (session), in the page tokens (pageToken) or in a header of an XHR (ajax).  The valid
+ * benchmark is the cost every protected request pays, the rejected one sends a wrong token
+ * (only the Empty action is configured, so it is the cost of detecting it).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsValidRequestBenchmark {
+
+	/**
+	 * the configuration, one per fork
+	 */
+	@State(Scope.Benchmark)
+	public static class Configuration {
+
+		@Param({ "session", "pageToken", "ajax" })
+		public String mode;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Map<String, String> overrides = new HashMap<String, String>();
+			overrides.put("org.owasp.csrfguard.TokenPerPage", Boolean.toString("pageToken".equals(this.mode)));
+			overrides.put("org.owasp.csrfguard.Ajax", Boolean.toString("ajax".equals(this.mode)));
+			CsrfGuardBenchmarkSupport.configure(overrides);
+		}
+
+		boolean isAjax() {
+			return "ajax".equals(this.mode);
+		}
+	}
+
+	/**
+	 * the session and requests of a thread
+	 */
+	@State(Scope.Thread)
+	public static class Requests {
+
+		MockHttpServletRequest validRequest;
+
+		MockHttpServletRequest rejectedRequest;
+
+		MockHttpServletResponse response;
+
+		@Setup(Level.Trial)
+		public void setup(Configuration configuration) {
+			MockHttpSession session = CsrfGuardBenchmarkSupport.newSession();
+			this.validRequest = CsrfGuardBenchmarkSupport.newValidRequest(session, configuration.isAjax());
+
+			String tokenName = CsrfGuard.getInstance().getTokenName();
+			this.rejectedRequest = CsrfGuardBenchmarkSupport.newValidRequest(session, configuration.isAjax());
+			if (configuration.isAjax()) {
+				this.rejectedRequest.setHeader(tokenName, "not-the-token");
+			} else {
+				this.rejectedRequest.setParameter(tokenName, "not-the-token");
+			}
+			this.response = new MockHttpServletResponse();
+		}
+	}
+
+	@Benchmark
+	public boolean valid(Requests requests) {
+		return CsrfGuard.getInstance().isValidRequest(requests.validRequest, requests.response);
+	}
+
+	@Benchmark
+	public boolean rejected(Requests requests) {
+		return CsrfGuard.getInstance().isValidRequest(requests.rejectedRequest, requests.response);
+	}
+
+}
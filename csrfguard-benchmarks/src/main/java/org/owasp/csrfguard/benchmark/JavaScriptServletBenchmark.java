@@ -0,0 +1,108 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.owasp.csrfguard.servlet.JavaScriptServlet;
+
+/**
+ * JavaScriptServlet.doGet(), i.e. checking the referer and writing the javascript with the
+ * token and settings substituted into the template (writeJavaScript).  With rotate or token
+ * per page the response is not cacheable, so every page view pays for this.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaScriptServletBenchmark {
+
+	/**
+	 * the configuration and the servlet, one per fork
+	 */
+	@State(Scope.Benchmark)
+	public static class Servlet {
+
+		@Param({ "false", "true" })
+		public boolean tokenPerPage;
+
+		JavaScriptServlet javaScriptServlet;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Map<String, String> overrides = new HashMap<String, String>();
+			overrides.put("org.owasp.csrfguard.TokenPerPage", Boolean.toString(this.tokenPerPage));
+			this.javaScriptServlet = CsrfGuardBenchmarkSupport.configure(overrides);
+		}
+	}
+
+	/**
+	 * the request for the javascript of a thread
+	 */
+	@State(Scope.Thread)
+	public static class Request {
+
+		MockHttpServletRequest request;
+
+		MockHttpServletResponse response;
+
+		@Setup(Level.Trial)
+		public void setup(@SuppressWarnings("unused") Servlet servlet) {
+			this.request = new MockHttpServletRequest().setMethod("GET")
+					.setServletPath(CsrfGuardBenchmarkSupport.JAVASCRIPT_SERVLET_PATH)
+					.setSession(CsrfGuardBenchmarkSupport.newSession())
+					.setHeader("Referer", "http://localhost:8080" + MockHttpServletRequest.CONTEXT_PATH + "/index.html");
+			this.response = new MockHttpServletResponse();
+		}
+	}
+
+	@Benchmark
+	public long doGet(Servlet servlet, Request request) throws IOException {
+		request.response.reset();
+		servlet.javaScriptServlet.doGet(request.request, request.response);
+		return request.response.getBytesWritten();
+	}
+
+}
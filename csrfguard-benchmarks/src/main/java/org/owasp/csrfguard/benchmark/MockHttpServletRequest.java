@@ -0,0 +1,455 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.io.BufferedReader;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.Part;
+
+/**
+ * Minimal request for the benchmarks: method, uri, headers, parameters, attributes and a
+ * session, all settable.  Header names are matched case insensitively like a container does.
+ * The request is not thread safe, each benchmark thread has its own.
+ */
+@SuppressWarnings("deprecation")
+public class MockHttpServletRequest implements HttpServletRequest {
+
+	static final String CONTEXT_PATH = "/app";
+
+	private String method = "POST";
+
+	private String requestUri = CONTEXT_PATH + "/protect.html";
+
+	private String servletPath = "/protect.html";
+
+	private final Map<String, String> headers = new HashMap<String, String>();
+
+	private final Map<String, String> parameters = new HashMap<String, String>();
+
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+	private MockHttpSession session = null;
+
+	public MockHttpServletRequest setMethod(String method) {
+		this.method = method;
+		return this;
+	}
+
+	/**
+	 * @param servletPath path in the webapp, e.g. /protect.html, the request uri is the context path and this
+	 * @return this
+	 */
+	public MockHttpServletRequest setServletPath(String servletPath) {
+		this.servletPath = servletPath;
+		this.requestUri = CONTEXT_PATH + servletPath;
+		return this;
+	}
+
+	public MockHttpServletRequest setHeader(String name, String value) {
+		if (value == null) {
+			this.headers.remove(name.toLowerCase(Locale.ENGLISH));
+		} else {
+			this.headers.put(name.toLowerCase(Locale.ENGLISH), value);
+		}
+		return this;
+	}
+
+	public MockHttpServletRequest setParameter(String name, String value) {
+		if (value == null) {
+			this.parameters.remove(name);
+		} else {
+			this.parameters.put(name, value);
+		}
+		return this;
+	}
+
+	public MockHttpServletRequest setSession(MockHttpSession session) {
+		this.session = session;
+		return this;
+	}
+
+	@Override
+	public String getMethod() {
+		return this.method;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return this.requestUri;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		return new StringBuffer("http://localhost:8080").append(this.requestUri);
+	}
+
+	@Override
+	public String getContextPath() {
+		return CONTEXT_PATH;
+	}
+
+	@Override
+	public String getServletPath() {
+		return this.servletPath;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return null;
+	}
+
+	@Override
+	public String getPathTranslated() {
+		return null;
+	}
+
+	@Override
+	public String getQueryString() {
+		return null;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return this.headers.get(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		String value = getHeader(name);
+		return Collections.enumeration(value == null ? Collections.<String>emptyList() : Collections.singletonList(value));
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(this.headers.keySet());
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		String value = getHeader(name);
+		return value == null ? -1 : Long.parseLong(value);
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		String value = getHeader(name);
+		return value == null ? -1 : Integer.parseInt(value);
+	}
+
+	@Override
+	public String getParameter(String name) {
+		return this.parameters.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(this.parameters.keySet());
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		String value = getParameter(name);
+		return value == null ? null : new String[] { value };
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		Map<String, String[]> parameterMap = new HashMap<String, String[]>();
+		for (Map.Entry<String, String> entry : this.parameters.entrySet()) {
+			parameterMap.put(entry.getKey(), new String[] { entry.getValue() });
+		}
+		return parameterMap;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return this.attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(this.attributes.keySet());
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		this.attributes.put(name, value);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		this.attributes.remove(name);
+	}
+
+	@Override
+	public HttpSession getSession(boolean create) {
+		if (this.session == null && create) {
+			this.session = new MockHttpSession();
+			this.session.setNew(true);
+		}
+		return this.session;
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return getSession(true);
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		return this.session == null ? null : this.session.getId();
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		return this.session != null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return this.session != null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromUrl() {
+		return false;
+	}
+
+	@Override
+	public String getAuthType() {
+		return null;
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		return null;
+	}
+
+	@Override
+	public String getRemoteUser() {
+		return null;
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		return false;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return null;
+	}
+
+	@Override
+	public boolean authenticate(HttpServletResponse response) {
+		return false;
+	}
+
+	@Override
+	public void login(String username, String password) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void logout() {
+	}
+
+	@Override
+	public Collection<Part> getParts() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Part getPart(String name) {
+		return null;
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return "UTF-8";
+	}
+
+	@Override
+	public void setCharacterEncoding(String env) {
+	}
+
+	@Override
+	public int getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public String getContentType() {
+		return null;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getProtocol() {
+		return "HTTP/1.1";
+	}
+
+	@Override
+	public String getScheme() {
+		return "http";
+	}
+
+	@Override
+	public String getServerName() {
+		return "localhost";
+	}
+
+	@Override
+	public int getServerPort() {
+		return 8080;
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public String getRemoteHost() {
+		return "localhost";
+	}
+
+	@Override
+	public int getRemotePort() {
+		return 50000;
+	}
+
+	@Override
+	public String getLocalName() {
+		return "localhost";
+	}
+
+	@Override
+	public String getLocalAddr() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public int getLocalPort() {
+		return 8080;
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ENGLISH;
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(Collections.singletonList(Locale.ENGLISH));
+	}
+
+	@Override
+	public boolean isSecure() {
+		return false;
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		return null;
+	}
+
+	@Override
+	public String getRealPath(String path) {
+		return null;
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return MockServletConfig.SERVLET_CONTEXT;
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		throw new IllegalStateException("async is not supported");
+	}
+
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		throw new IllegalStateException("async is not supported");
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		throw new IllegalStateException("async is not supported");
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return DispatcherType.REQUEST;
+	}
+
+}
@@ -0,0 +1,277 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal response for the benchmarks: keeps the status, headers and the number of bytes
+ * written, the body itself is discarded.  Call {@link #reset()} to reuse it.
+ * The response is not thread safe, each benchmark thread has its own.
+ */
+@SuppressWarnings("deprecation")
+public class MockHttpServletResponse implements HttpServletResponse {
+
+	private final Map<String, String> headers = new HashMap<String, String>();
+
+	private int status = SC_OK;
+
+	private String contentType = null;
+
+	private boolean committed = false;
+
+	private long bytesWritten = 0;
+
+	/**
+	 * counts what is written instead of keeping it
+	 */
+	private final ServletOutputStream outputStream = new ServletOutputStream() {
+
+		@Override
+		public void write(int b) {
+			MockHttpServletResponse.this.bytesWritten++;
+			MockHttpServletResponse.this.committed = true;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			MockHttpServletResponse.this.bytesWritten += len;
+			MockHttpServletResponse.this.committed = true;
+		}
+
+	};
+
+	/**
+	 * @return number of bytes written to the body since the last reset
+	 */
+	public long getBytesWritten() {
+		return this.bytesWritten;
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+	}
+
+	@Override
+	public boolean containsHeader(String name) {
+		return this.headers.containsKey(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	@Override
+	public String encodeURL(String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeUrl(String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectUrl(String url) {
+		return url;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) {
+		sendError(sc);
+	}
+
+	@Override
+	public void sendError(int sc) {
+		this.status = sc;
+		this.committed = true;
+	}
+
+	@Override
+	public void sendRedirect(String location) {
+		setHeader("Location", location);
+		this.status = SC_FOUND;
+		this.committed = true;
+	}
+
+	@Override
+	public void setDateHeader(String name, long date) {
+		setHeader(name, Long.toString(date));
+	}
+
+	@Override
+	public void addDateHeader(String name, long date) {
+		setHeader(name, Long.toString(date));
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		this.headers.put(name.toLowerCase(Locale.ENGLISH), value);
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		setHeader(name, value);
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		setHeader(name, Integer.toString(value));
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		setHeader(name, Integer.toString(value));
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		this.status = sc;
+	}
+
+	@Override
+	public void setStatus(int sc, String sm) {
+		this.status = sc;
+	}
+
+	@Override
+	public int getStatus() {
+		return this.status;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return this.headers.get(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	@Override
+	public Collection<String> getHeaders(String name) {
+		String value = getHeader(name);
+		return value == null ? Collections.<String>emptyList() : Collections.singletonList(value);
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return new ArrayList<String>(this.headers.keySet());
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return "UTF-8";
+	}
+
+	@Override
+	public String getContentType() {
+		return this.contentType;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		return this.outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() {
+		try {
+			return new PrintWriter(new OutputStreamWriter(this.outputStream, "UTF-8"));
+		} catch (UnsupportedEncodingException uee) {
+			throw new RuntimeException(uee);
+		}
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset) {
+	}
+
+	@Override
+	public void setContentLength(int len) {
+		setIntHeader("Content-Length", len);
+	}
+
+	@Override
+	public void setContentType(String type) {
+		this.contentType = type;
+	}
+
+	@Override
+	public void setBufferSize(int size) {
+	}
+
+	@Override
+	public int getBufferSize() {
+		return 0;
+	}
+
+	@Override
+	public void flushBuffer() {
+		this.committed = true;
+	}
+
+	@Override
+	public void resetBuffer() {
+		this.bytesWritten = 0;
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return this.committed;
+	}
+
+	@Override
+	public void reset() {
+		this.headers.clear();
+		this.status = SC_OK;
+		this.contentType = null;
+		this.committed = false;
+		this.bytesWritten = 0;
+	}
+
+	@Override
+	public void setLocale(Locale loc) {
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ENGLISH;
+	}
+
+}
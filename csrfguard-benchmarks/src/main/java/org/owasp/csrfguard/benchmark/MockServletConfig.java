@@ -0,0 +1,99 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * Servlet config to initialize the JavaScriptServlet with.  The servlet context is only
+ * used at init time (init params and logging), so it is a proxy instead of a full mock.
+ */
+public class MockServletConfig implements ServletConfig {
+
+	/**
+	 * servlet context which has no init params, no attributes, and discards log messages
+	 */
+	static final ServletContext SERVLET_CONTEXT = (ServletContext) Proxy.newProxyInstance(
+			MockServletConfig.class.getClassLoader(), new Class<?>[] { ServletContext.class }, new InvocationHandler() {
+
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if ("getInitParameterNames".equals(method.getName()) || "getAttributeNames".equals(method.getName())) {
+						return Collections.enumeration(Collections.<String>emptyList());
+					}
+					if ("getContextPath".equals(method.getName())) {
+						return MockHttpServletRequest.CONTEXT_PATH;
+					}
+					if (method.getReturnType() == boolean.class) {
+						return Boolean.FALSE;
+					}
+					if (method.getReturnType() == int.class) {
+						return 0;
+					}
+					return null;
+				}
+			});
+
+	private final Map<String, String> initParameters = new HashMap<String, String>();
+
+	public MockServletConfig setInitParameter(String name, String value) {
+		this.initParameters.put(name, value);
+		return this;
+	}
+
+	@Override
+	public String getServletName() {
+		return "JavaScriptServlet";
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return SERVLET_CONTEXT;
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		return this.initParameters.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		return Collections.enumeration(this.initParameters.keySet());
+	}
+
+}
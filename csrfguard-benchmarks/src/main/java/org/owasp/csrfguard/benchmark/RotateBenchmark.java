@@ -0,0 +1,144 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.CsrfGuardException;
+import org.owasp.csrfguard.action.Rotate;
+import org.owasp.csrfguard.util.RandomGenerator;
+
+/**
+ * Rotation cost against the number of pages a session has tokens for, in pageToken mode:
+ * the Rotate action alone (page tokens are only marked stale), the Rotate action plus
+ * regenerating all the stale page tokens with one PRNG call, and as a baseline regenerating
+ * them with one generateRandomId() call per page like rotation used to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotateBenchmark {
+
+	/**
+	 * the configuration, one per fork
+	 */
+	@State(Scope.Benchmark)
+	public static class Configuration {
+
+		/**
+		 * number of pages the session has tokens for
+		 */
+		@Param({ "1", "10", "100", "1000" })
+		public int pages;
+
+		final Rotate rotate = new Rotate();
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Map<String, String> overrides = new HashMap<String, String>();
+			overrides.put("org.owasp.csrfguard.TokenPerPage", "true");
+			overrides.put("org.owasp.csrfguard.protected.Pages", MockHttpServletRequest.CONTEXT_PATH + "/pages/*");
+			CsrfGuardBenchmarkSupport.configure(overrides);
+			this.rotate.setName("Rotate");
+		}
+	}
+
+	/**
+	 * the session of a thread
+	 */
+	@State(Scope.Thread)
+	public static class Session {
+
+		MockHttpServletRequest request;
+
+		MockHttpServletResponse response;
+
+		Map<String, String> pageTokens;
+
+		List<String> uris;
+
+		@Setup(Level.Trial)
+		@SuppressWarnings("unchecked")
+		public void setup(Configuration configuration) {
+			MockHttpSession session = CsrfGuardBenchmarkSupport.newSession();
+			for (int i = 1; i < configuration.pages; i++) {
+				MockHttpServletRequest pageRequest = new MockHttpServletRequest().setServletPath("/pages/page" + i + ".html").setSession(session);
+				CsrfGuard.getInstance().updateTokens(pageRequest);
+			}
+			this.request = CsrfGuardBenchmarkSupport.newValidRequest(session, false);
+			this.response = new MockHttpServletResponse();
+			this.pageTokens = (Map<String, String>) session.getAttribute(CsrfGuard.PAGE_TOKENS_KEY);
+			this.uris = new ArrayList<String>(this.pageTokens.keySet());
+		}
+	}
+
+	@Benchmark
+	public Object rotate(Configuration configuration, Session session) throws CsrfGuardException {
+		configuration.rotate.execute(session.request, session.response, null, CsrfGuard.getInstance());
+		return session.request.getSession(false).getAttribute(CsrfGuard.getInstance().getSessionKey());
+	}
+
+	@Benchmark
+	public Object rotateAndRefresh(Configuration configuration, Session session) throws CsrfGuardException {
+		CsrfGuard csrfGuard = CsrfGuard.getInstance();
+		configuration.rotate.execute(session.request, session.response, null, csrfGuard);
+		csrfGuard.refreshPageTokens(session.pageTokens);
+		return session.pageTokens;
+	}
+
+	@Benchmark
+	public Object perPageBaseline(Configuration configuration, Session session) throws CsrfGuardException {
+		CsrfGuard csrfGuard = CsrfGuard.getInstance();
+		configuration.rotate.execute(session.request, session.response, null, csrfGuard);
+		for (String uri : session.uris) {
+			session.pageTokens.put(uri, RandomGenerator.generateRandomId(csrfGuard.getPrng(), csrfGuard.getTokenLength()));
+		}
+		return session.pageTokens;
+	}
+
+}
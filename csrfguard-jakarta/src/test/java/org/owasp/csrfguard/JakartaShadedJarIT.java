@@ -0,0 +1,160 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.junit.Test;
+
+/**
+ * the shaded jar must run on a Jakarta container: its classes load with only jakarta.servlet
+ * on the classpath, and none of them still references javax.servlet
+ */
+public class JakartaShadedJarIT {
+
+	/**
+	 * the classes a webapp configures in web.xml or a tld
+	 */
+	private static final String[] ENTRY_POINTS = {
+		"org.owasp.csrfguard.CsrfGuardFilter",
+		"org.owasp.csrfguard.CsrfGuardServletContextListener",
+		"org.owasp.csrfguard.CsrfGuardHttpSessionListener",
+		"org.owasp.csrfguard.servlet.JavaScriptServlet",
+		"org.owasp.csrfguard.tag.ATag",
+		"org.owasp.csrfguard.tag.FormTag",
+		"org.owasp.csrfguard.tag.TokenTag",
+		"org.owasp.csrfguard.tag.TokenNameTag",
+		"org.owasp.csrfguard.tag.TokenValueTag"
+	};
+
+	@Test
+	public void noClassReferencesJavaxServlet() throws IOException {
+		List<String> javaxClasses = new ArrayList<String>();
+		JarFile jar = new JarFile(shadedJar());
+		try {
+			Enumeration<JarEntry> entries = jar.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (!entry.getName().endsWith(".class")) {
+					continue;
+				}
+				/** class names in the constant pool are ascii, e.g. Ljavax/servlet/Filter; **/
+				String classFile = new String(read(jar.getInputStream(entry)), "ISO-8859-1");
+				if (classFile.contains("javax/servlet")) {
+					javaxClasses.add(entry.getName());
+				}
+			}
+		} finally {
+			jar.close();
+		}
+		assertEquals("classes referencing javax.servlet", "[]", javaxClasses.toString());
+	}
+
+	@Test
+	public void entryPointsLoadWithOnlyJakartaServlet() throws Exception {
+		/** no parent but the bootstrap loader, so javax.servlet (and the unshaded csrfguard jar) are not visible **/
+		URLClassLoader loader = new URLClassLoader(new URL[] {
+			shadedJar().toURI().toURL(),
+			location("jakarta.servlet.Filter"),
+			location("jakarta.servlet.jsp.tagext.Tag")
+		}, null);
+
+		try {
+			loader.loadClass("javax.servlet.Filter");
+			fail("javax.servlet is on the classpath");
+		} catch (ClassNotFoundException expected) {
+			//only jakarta.servlet
+		}
+
+		for (String entryPoint : ENTRY_POINTS) {
+			Class<?> entryPointClass = Class.forName(entryPoint, false, loader);
+			/** resolves the types of all the signatures **/
+			entryPointClass.getDeclaredMethods();
+			entryPointClass.getDeclaredConstructor().newInstance();
+		}
+
+		Class<?> filter = Class.forName("jakarta.servlet.Filter", false, loader);
+		assertTrue(filter.isAssignableFrom(Class.forName(ENTRY_POINTS[0], false, loader)));
+		Class<?> listener = Class.forName("jakarta.servlet.ServletContextListener", false, loader);
+		assertTrue(listener.isAssignableFrom(Class.forName(ENTRY_POINTS[1], false, loader)));
+	}
+
+	/**
+	 * @return the jar built by the shade plugin, set by failsafe
+	 */
+	private static File shadedJar() {
+		String path = System.getProperty("csrfguard.shadedJar");
+		assertNotNull("csrfguard.shadedJar is not set, run with mvn verify", path);
+		File jar = new File(path);
+		assertTrue(jar + " does not exist", jar.isFile());
+		return jar;
+	}
+
+	/**
+	 * @param className a class of a jar on the test classpath
+	 * @return the jar
+	 */
+	private static URL location(String className) throws ClassNotFoundException {
+		return Class.forName(className).getProtectionDomain().getCodeSource().getLocation();
+	}
+
+	/**
+	 * @param input closed when read
+	 * @return the bytes
+	 */
+	private static byte[] read(InputStream input) throws IOException {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			return bytes.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+
+}
@@ -0,0 +1,318 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.virtualthreads;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.CsrfGuardFilter;
+import org.owasp.csrfguard.CsrfGuardRequestContext;
+import org.owasp.csrfguard.config.PropertiesConfigurationProviderFactory;
+
+/**
+ * Thousands of requests through the CsrfGuardFilter, each on its own virtual thread, with the JFR
+ * jdk.VirtualThreadPinned event recorded.  The rest of the chain parks the thread (like a servlet waiting on
+ * a database), so a monitor held by CsrfGuard around the chain, or CsrfGuard blocking inside a synchronized
+ * block, pins the carrier thread and fails the test.  One request in ten has a bad token and runs the actions.
+ */
+public class VirtualThreadStressTest {
+
+	private static final int REQUESTS = 10000;
+
+	private static final String TOKEN_NAME = "OWASP_CSRFTOKEN";
+
+	/**
+	 * kept so the level set on it is not lost when it is garbage collected
+	 */
+	private static final Logger CSRFGUARD_LOGGER = Logger.getLogger("Owasp.CsrfGuard");
+
+	@BeforeClass
+	public static void configure() throws Exception {
+		/** the filter logs each request at info **/
+		CSRFGUARD_LOGGER.setLevel(Level.SEVERE);
+
+		Properties properties = new Properties();
+		properties.setProperty("org.owasp.csrfguard.configuration.provider.factory", PropertiesConfigurationProviderFactory.class.getName());
+		properties.setProperty("org.owasp.csrfguard.Logger", "org.owasp.csrfguard.log.JavaLogger");
+		properties.setProperty("org.owasp.csrfguard.TokenName", TOKEN_NAME);
+		properties.setProperty("org.owasp.csrfguard.Rotate", "false");
+		properties.setProperty("org.owasp.csrfguard.TokenPerPage", "false");
+		properties.setProperty("org.owasp.csrfguard.Protect", "true");
+		properties.setProperty("org.owasp.csrfguard.protected.Protect", "/app/protect.html");
+		properties.setProperty("org.owasp.csrfguard.action.Log", "org.owasp.csrfguard.action.Log");
+		properties.setProperty("org.owasp.csrfguard.action.Log.Message", "rejected (ip:%remote_ip%, uri:%request_uri%, error:%exception_message%)");
+		properties.setProperty("org.owasp.csrfguard.action.Rotate", "org.owasp.csrfguard.action.Rotate");
+		properties.setProperty("org.owasp.csrfguard.action.Error", "org.owasp.csrfguard.action.Error");
+		properties.setProperty("org.owasp.csrfguard.action.Error.Code", "403");
+		properties.setProperty("org.owasp.csrfguard.action.Error.Message", "Forbidden");
+		CsrfGuard.load(properties);
+	}
+
+	@Test
+	public void virtualThreadsAreNotPinned() throws Exception {
+		final CsrfGuardFilter filter = new CsrfGuardFilter();
+		final AtomicInteger passed = new AtomicInteger();
+		final AtomicInteger rejected = new AtomicInteger();
+		final AtomicInteger lostRequest = new AtomicInteger();
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		Recording recording = new Recording();
+		recording.enable("jdk.VirtualThreadPinned").withThreshold(java.time.Duration.ZERO).withStackTrace();
+		recording.start();
+
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		try {
+			for (int i = 0; i < REQUESTS; i++) {
+				final boolean valid = i % 10 != 0;
+				executor.submit(new Runnable() {
+
+					public void run() {
+						try {
+							HttpSession session = session();
+							final HttpServletRequest request = request(session, valid);
+							filter.doFilter(request, response(rejected), new FilterChain() {
+
+								public void doFilter(ServletRequest chainRequest, ServletResponse chainResponse) throws java.io.IOException {
+									try {
+										/** parks the virtual thread, pinned if CsrfGuard holds a monitor here **/
+										Thread.sleep(1);
+									} catch (InterruptedException ie) {
+										throw new java.io.InterruptedIOException();
+									}
+									if (CsrfGuardRequestContext.current() != request) {
+										lostRequest.incrementAndGet();
+									}
+									passed.incrementAndGet();
+								}
+							});
+						} catch (Throwable t) {
+							errors.add(t);
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			assertTrue("requests did not finish", executor.awaitTermination(2, TimeUnit.MINUTES));
+		}
+
+		recording.stop();
+		Path recordingFile = Files.createTempFile("csrfguard-virtual-threads", ".jfr");
+		List<String> pinnedInCsrfGuard = new ArrayList<String>();
+		try {
+			recording.dump(recordingFile);
+			for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+				if ("jdk.VirtualThreadPinned".equals(event.getEventType().getName()) && inCsrfGuard(event)) {
+					pinnedInCsrfGuard.add(event.toString());
+				}
+			}
+		} finally {
+			recording.close();
+			Files.deleteIfExists(recordingFile);
+		}
+
+		assertEquals("errors: " + errors, 0, errors.size());
+		assertEquals(REQUESTS - REQUESTS / 10, passed.get());
+		assertEquals(REQUESTS / 10, rejected.get());
+		assertEquals(0, lostRequest.get());
+		assertEquals("pinned: " + pinnedInCsrfGuard, 0, pinnedInCsrfGuard.size());
+	}
+
+	/**
+	 * @param event
+	 * @return true if a CsrfGuard frame (not this test) is on the stack of the event
+	 */
+	private static boolean inCsrfGuard(RecordedEvent event) {
+		if (event.getStackTrace() == null) {
+			return true;
+		}
+		for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+			String className = frame.getMethod().getType().getName();
+			if (className.startsWith("org.owasp.csrfguard.") && !className.startsWith("org.owasp.csrfguard.virtualthreads.")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return a session which has its token, keeping its attributes in a map
+	 */
+	private static HttpSession session() {
+		final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+		final String id = "session" + System.nanoTime();
+		HttpSession session = (HttpSession) Proxy.newProxyInstance(VirtualThreadStressTest.class.getClassLoader(), 
+				new Class<?>[] { HttpSession.class }, new InvocationHandler() {
+
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				switch (method.getName()) {
+					case "getAttribute":
+						return attributes.get(args[0]);
+					case "setAttribute":
+						if (args[1] == null) {
+							attributes.remove(args[0]);
+						} else {
+							attributes.put((String) args[0], args[1]);
+						}
+						return null;
+					case "removeAttribute":
+						attributes.remove(args[0]);
+						return null;
+					case "getId":
+						return id;
+					default:
+						return defaultValue(proxy, method, args);
+				}
+			}
+		});
+		CsrfGuard.getInstance().updateTokens(request(session, null));
+		return session;
+	}
+
+	/**
+	 * @param session
+	 * @param valid true for the session token, false for a wrong one
+	 * @return a post to the protected page
+	 */
+	private static HttpServletRequest request(HttpSession session, boolean valid) {
+		String token = CsrfGuard.getInstance().getTokenValue(request(session, null));
+		return request(session, valid ? token : "wrong");
+	}
+
+	/**
+	 * @param session
+	 * @param token sent as a parameter, or null for none
+	 * @return a post to the protected page
+	 */
+	private static HttpServletRequest request(HttpSession session, String token) {
+		final Map<String, Object> answers = new HashMap<String, Object>();
+		answers.put("getRequestURI", "/app/protect.html");
+		answers.put("getContextPath", "/app");
+		answers.put("getServletPath", "/protect.html");
+		answers.put("getMethod", "POST");
+		answers.put("getRemoteAddr", "127.0.0.1");
+		answers.put("getDispatcherType", DispatcherType.REQUEST);
+		answers.put("getSession", session);
+		answers.put("isRequestedSessionIdValid", true);
+		final String theToken = token;
+		return (HttpServletRequest) Proxy.newProxyInstance(VirtualThreadStressTest.class.getClassLoader(), 
+				new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getParameter".equals(method.getName())) {
+					return TOKEN_NAME.equals(args[0]) ? theToken : null;
+				}
+				if ("getParameterNames".equals(method.getName())) {
+					return Collections.enumeration(theToken == null ? Collections.<String>emptyList() : Collections.singletonList(TOKEN_NAME));
+				}
+				if (answers.containsKey(method.getName())) {
+					return answers.get(method.getName());
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * @param rejected counts the rejections (sendError)
+	 * @return a response which ignores what is written to it
+	 */
+	private static HttpServletResponse response(final AtomicInteger rejected) {
+		return (HttpServletResponse) Proxy.newProxyInstance(VirtualThreadStressTest.class.getClassLoader(), 
+				new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("sendError".equals(method.getName())) {
+					rejected.incrementAndGet();
+					return null;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * @return identity for equals and hashCode, otherwise null, false or 0
+	 */
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		if ("equals".equals(method.getName())) {
+			return proxy == args[0];
+		}
+		if ("hashCode".equals(method.getName())) {
+			return System.identityHashCode(proxy);
+		}
+		Class<?> returnType = method.getReturnType();
+		if (returnType == boolean.class) {
+			return false;
+		}
+		if (returnType == int.class) {
+			return 0;
+		}
+		if (returnType == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+}
@@ -34,28 +34,42 @@ import java.io.PrintWriter;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
+import org.owasp.csrfguard.action.ActionChain;
 import org.owasp.csrfguard.action.IAction;
 import org.owasp.csrfguard.config.ConfigurationProvider;
 import org.owasp.csrfguard.config.ConfigurationProviderFactory;
 import org.owasp.csrfguard.config.NullConfigurationProvider;
 import org.owasp.csrfguard.config.PropertiesConfigurationProvider;
+import org.owasp.csrfguard.config.overlay.ConfigPropertiesCascadeBase;
+import org.owasp.csrfguard.config.overlay.ConfigurationAutodetectProviderFactory;
 import org.owasp.csrfguard.config.overlay.ExpirableCache;
 import org.owasp.csrfguard.log.ILogger;
 import org.owasp.csrfguard.log.LogLevel;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics.Bypass;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics.RejectionCause;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics.ValidationMode;
+import org.owasp.csrfguard.metrics.ITracer;
+import org.owasp.csrfguard.metrics.ITracer.Stage;
+import org.owasp.csrfguard.throttle.FailureThrottle;
 import org.owasp.csrfguard.servlet.JavaScriptServlet;
 import org.owasp.csrfguard.util.CsrfGuardUtils;
+import org.owasp.csrfguard.util.PrngSeeder;
 import org.owasp.csrfguard.util.RandomGenerator;
+import org.owasp.csrfguard.util.SingleFlightLoader;
 import org.owasp.csrfguard.util.Streams;
 import org.owasp.csrfguard.util.Writers;
 
@@ -70,6 +84,26 @@ public final class CsrfGuard {
 	 */
 	private static ExpirableCache<Boolean, ConfigurationProvider> configurationProviderExpirableCache = new ExpirableCache<Boolean, ConfigurationProvider>(1);
 	
+	/**
+	 * only one thread builds the configuration when the cache is empty, without holding a lock
+	 */
+	private static SingleFlightLoader<ConfigurationProvider> configurationProviderLoader = new SingleFlightLoader<ConfigurationProvider>();
+	
+	/**
+	 * the last provider built, to tell when the factory made a new one
+	 */
+	private static volatile ConfigurationProvider lastConfigurationProvider = null;
+	
+	/**
+	 * incremented each time the factory makes a new provider
+	 */
+	private static final AtomicLong configVersion = new AtomicLong(0);
+	
+	/**
+	 * millis since 1970 when the current provider was made, 0 if none yet
+	 */
+	private static volatile long configTimestamp = 0;
+	
 	private ConfigurationProvider config() {
 		if (this.properties == null) {
 			return new NullConfigurationProvider();
@@ -79,14 +113,17 @@ public final class CsrfGuard {
 		
 		if (configurationProvider == null) {
 
-			synchronized (CsrfGuard.class) {
-				
-				if (configurationProvider == null) {
-					
-					configurationProvider = retrieveNewConfig();
+			configurationProvider = configurationProviderLoader.load(new Callable<ConfigurationProvider>() {
+
+				public ConfigurationProvider call() {
+					//check again in case another thread just loaded it
+					ConfigurationProvider cachedConfigurationProvider = configurationProviderExpirableCache.get(Boolean.TRUE);
+					if (cachedConfigurationProvider != null) {
+						return cachedConfigurationProvider;
+					}
+					return retrieveNewConfig();
 				}
-				
-			}
+			});
 		} else if ( !configurationProvider.isCacheable()) {
 			//dont synchronize if not cacheable
 			configurationProvider = retrieveNewConfig();
@@ -102,8 +139,7 @@ public final class CsrfGuard {
 	private ConfigurationProvider retrieveNewConfig() {
 		ConfigurationProvider configurationProvider = null;
 		//lets see what provider we are using
-		String configurationProviderFactoryClassName = this.properties.getProperty(
-				"org.owasp.csrfguard.configuration.provider.factory", PropertiesConfigurationProvider.class.getName());
+		String configurationProviderFactoryClassName = getConfigurationProviderFactoryClassName();
 
 		Class<ConfigurationProviderFactory> configurationProviderFactoryClass = CsrfGuardUtils.forName(configurationProviderFactoryClassName);
 		
@@ -111,9 +147,86 @@ public final class CsrfGuard {
 							
 		configurationProvider = configurationProviderFactory.retrieveConfiguration(this.properties);
 		configurationProviderExpirableCache.put(Boolean.TRUE, configurationProvider);
+		
+		//factories return the same provider until the config changes
+		ConfigurationProvider previousConfigurationProvider = lastConfigurationProvider;
+		if (configurationProvider != previousConfigurationProvider) {
+			lastConfigurationProvider = configurationProvider;
+			configTimestamp = System.currentTimeMillis();
+			configVersion.incrementAndGet();
+			
+			/** the new provider is published, so the old actions can log what they hold (through config()) **/
+			if (previousConfigurationProvider != null 
+					&& previousConfigurationProvider.getActionChain() != configurationProvider.getActionChain()) {
+				previousConfigurationProvider.getActionChain().close();
+			}
+		}
 		return configurationProvider;
 	}
 	
+	/**
+	 * @return the number of times the configuration was built or changed since startup, 0 if not yet
+	 */
+	public static long getConfigVersion() {
+		return configVersion.get();
+	}
+	
+	/**
+	 * @return millis since 1970 when the current configuration was built, 0 if not yet
+	 */
+	public static long getConfigTimestamp() {
+		return configTimestamp;
+	}
+	
+	/**
+	 * @return the class of the configuration provider factory from the properties
+	 */
+	public String getConfigurationProviderFactoryClassName() {
+		return this.properties.getProperty(
+				"org.owasp.csrfguard.configuration.provider.factory", PropertiesConfigurationProvider.class.getName());
+	}
+	
+	/**
+	 * @return the class of the configuration provider in use
+	 */
+	public String getConfigurationProviderClassName() {
+		return config().getClass().getName();
+	}
+	
+	/**
+	 * read the config files again and rebuild the configuration now, instead of when the caches expire
+	 * @return the config version after the reload (the same as before if nothing changed)
+	 */
+	public long reloadConfig() {
+		ConfigPropertiesCascadeBase.reloadConfigFiles();
+		ConfigurationAutodetectProviderFactory.clearCache();
+		configurationProviderExpirableCache.clear();
+		config();
+		return getConfigVersion();
+	}
+	
+	/**
+	 * clear the compiled page patterns and the expirable caches, they are filled again on use
+	 */
+	public void clearCaches() {
+		this.regexPatternCache.clear();
+		ExpirableCache.clearAll();
+	}
+	
+	/**
+	 * @return number of compiled regex page patterns
+	 */
+	int getRegexPatternCount() {
+		return this.regexPatternCache.size();
+	}
+	
+	/**
+	 * @return the cache of the configuration provider
+	 */
+	static ExpirableCache<Boolean, ConfigurationProvider> getConfigurationProviderCache() {
+		return configurationProviderExpirableCache;
+	}
+	
 	private static class SingletonHolder {
 	  public static final CsrfGuard instance = new CsrfGuard();
 	}
@@ -207,7 +320,7 @@ public final class CsrfGuard {
 	/**
 	 * cache regex patterns here
 	 */
-	private Map<String, Pattern> regexPatternCache = new HashMap<String, Pattern>();
+	private Map<String, Pattern> regexPatternCache = new ConcurrentHashMap<String, Pattern>();
 	
 	public Set<String> getProtectedMethods () {
 		return config().getProtectedMethods();
@@ -216,6 +329,14 @@ public final class CsrfGuard {
 	public List<IAction> getActions() {
 		return config().getActions();
 	}
+	
+	/**
+	 * @see ConfigurationProvider#getActionChain()
+	 * @return the chain
+	 */
+	public ActionChain getActionChain() {
+		return config().getActionChain();
+	}
 
 	public String getJavascriptSourceFile() {
 		return config().getJavascriptSourceFile();
@@ -286,7 +407,7 @@ public final class CsrfGuard {
 					if (isTokenPerPagePrecreate()) {
 						createPageToken(pageTokens,uri);
 					}
-					tokenValue = pageTokens.get(uri);
+					tokenValue = currentPageToken(pageTokens, uri);
 					
 				}
 			}
@@ -300,19 +421,30 @@ public final class CsrfGuard {
 	}
 
 	public boolean isValidRequest(HttpServletRequest request, HttpServletResponse response) {
+		ITracer tracer = CsrfGuardMetrics.tracer();
+
+		long traceStart = tracer == null ? 0 : tracer.start(Stage.UriMatch);
 		boolean valid = !isProtectedPageAndMethod(request);
+		if (tracer != null) {
+			tracer.end(Stage.UriMatch, traceStart);
+			traceStart = tracer.start(Stage.Session);
+		}
 		HttpSession session = request.getSession(true);
 		String tokenFromSession = (String) session.getAttribute(getSessionKey());
+		if (tracer != null) {
+			tracer.end(Stage.Session, traceStart);
+		}
 
 		/** sending request to protected resource - verify token **/
 		if (tokenFromSession != null && !valid) {
 			try {
-				if (isAjaxEnabled() && isAjaxRequest(request)) {
-					verifyAjaxToken(request);
-				} else if (isTokenPerPageEnabled()) {
-					verifyPageToken(request);
-				} else {
-					verifySessionToken(request);
+				traceStart = tracer == null ? 0 : tracer.start(Stage.TokenVerification);
+				try {
+					verifyToken(request);
+				} finally {
+					if (tracer != null) {
+						tracer.end(Stage.TokenVerification, traceStart);
+					}
 				}
 				valid = true;
 			} catch (CsrfGuardException csrfe) {
@@ -321,10 +453,15 @@ public final class CsrfGuard {
 
 			/** rotate session and page tokens **/
 			if (!isAjaxRequest(request) && isRotateEnabled()) {
+				traceStart = tracer == null ? 0 : tracer.start(Stage.Rotation);
 				rotateTokens(request);
+				if (tracer != null) {
+					tracer.end(Stage.Rotation, traceStart);
+				}
 			}
 			/** expected token in session - bad state and not valid **/
 		} else if (tokenFromSession == null && !valid) {
+			CsrfGuardMetrics.getInstance().rejected(RejectionCause.NoSessionToken);
 			try {
 				throw new CsrfGuardException("CsrfGuard expects the token to exist in session at this point");
 			} catch (CsrfGuardException csrfe) {
@@ -333,11 +470,30 @@ public final class CsrfGuard {
 			}
 		} else {
 			/** unprotected page - nothing to do **/
+			CsrfGuardMetrics.getInstance().bypassed(Bypass.Unprotected);
 		}
 
 		return valid;
 	}
 
+	/**
+	 * check the token of the request against the session, the page or the ajax header
+	 * @param request
+	 * @throws CsrfGuardException if the token is missing or does not match
+	 */
+	private void verifyToken(HttpServletRequest request) throws CsrfGuardException {
+		if (isAjaxEnabled() && isAjaxRequest(request)) {
+			CsrfGuardMetrics.getInstance().validated(ValidationMode.Ajax);
+			verifyAjaxToken(request);
+		} else if (isTokenPerPageEnabled()) {
+			CsrfGuardMetrics.getInstance().validated(ValidationMode.PageToken);
+			verifyPageToken(request);
+		} else {
+			CsrfGuardMetrics.getInstance().validated(ValidationMode.Session);
+			verifySessionToken(request);
+		}
+	}
+
 	/**
 	 * @param request
 	 * @param response
@@ -345,11 +501,18 @@ public final class CsrfGuard {
 	 */
 	private void callActionsOnError(HttpServletRequest request,
 			HttpServletResponse response, CsrfGuardException csrfe) {
-		for (IAction action : getActions()) {
-			try {
-				action.execute(request, response, csrfe, this);
-			} catch (CsrfGuardException exception) {
-				getLogger().log(LogLevel.Error, exception);
+		ITracer tracer = CsrfGuardMetrics.tracer();
+		long traceStart = tracer == null ? 0 : tracer.start(Stage.Actions);
+		try {
+			ConfigurationProvider configurationProvider = config();
+			FailureThrottle failureThrottle = configurationProvider.getFailureThrottle();
+			if (failureThrottle != null) {
+				failureThrottle.failed(request);
+			}
+			configurationProvider.getActionChain().execute(request, response, csrfe, this, configurationProvider.isAsyncActions());
+		} finally {
+			if (tracer != null) {
+				tracer.end(Stage.Actions, traceStart);
 			}
 		}
 	}
@@ -384,13 +547,14 @@ public final class CsrfGuard {
 
 				/** first time initialization **/
 				if (pageTokens == null) {
-					pageTokens = new HashMap<String, String>();
+					pageTokens = new PageTokenMap();
 					session.setAttribute(CsrfGuard.PAGE_TOKENS_KEY, pageTokens);
 				}
 
 				/** create token if it does not exist **/
 				if (isProtectedPageAndMethod(request)) {
 					createPageToken(pageTokens, request.getRequestURI());
+					CsrfGuardMetrics.getInstance().pageTokens(pageTokens.size());
 				}
 			}
 		}
@@ -406,14 +570,93 @@ public final class CsrfGuard {
 		if(pageTokens == null)
 			return;
 		
-		/** create token if it does not exist **/
-		if (pageTokens.containsKey(uri))
+		/** create token if it does not exist (or is from before the last rotation) **/
+		if (pageTokens.containsKey(uri) && isPageTokenCurrent(pageTokens, uri))
+			return;
+		try {
+			String token = RandomGenerator.generateRandomId(getPrng(), getTokenLength());
+			
+			/** a concurrent request of the session may have created it meanwhile, keep that one **/
+			if (pageTokens instanceof PageTokenMap) {
+				((PageTokenMap) pageTokens).putIfAbsentOrStale(uri, token);
+			} else {
+				pageTokens.put(uri, token);
+			}
+		} catch (Exception e) {
+			throw new RuntimeException(String.format("unable to generate the random token - %s", e.getLocalizedMessage()), e);
+		}
+	}
+
+	/**
+	 * get the page token of a uri, regenerating it first if the page tokens were
+	 * rotated since it was created
+	 * @param pageTokens map of uri to token
+	 * @param uri
+	 * @return the token or null if there is no token for the uri
+	 */
+	private String currentPageToken(Map<String, String> pageTokens, String uri) {
+		if (pageTokens.containsKey(uri) && !isPageTokenCurrent(pageTokens, uri)) {
+			createPageToken(pageTokens, uri);
+		}
+		return pageTokens.get(uri);
+	}
+
+	/**
+	 * @param pageTokens map of uri to token
+	 * @param uri
+	 * @return false if the token of the uri is from before the last lazy rotation
+	 */
+	private static boolean isPageTokenCurrent(Map<String, String> pageTokens, String uri) {
+		return !(pageTokens instanceof PageTokenMap) || ((PageTokenMap) pageTokens).isCurrent(uri);
+	}
+
+	/**
+	 * regenerate all page tokens which are from before the last rotation (with one call to the PRNG),
+	 * call this before reading all the tokens of the map directly
+	 * @param pageTokens map of uri to token
+	 */
+	public void refreshPageTokens(Map<String, String> pageTokens) {
+		if (!(pageTokens instanceof PageTokenMap)) {
+			return;
+		}
+
+		List<String> staleUris = ((PageTokenMap) pageTokens).staleUris();
+
+		if (staleUris.isEmpty()) {
 			return;
+		}
+
+		String[] tokens = null;
+
 		try {
-			pageTokens.put(uri, RandomGenerator.generateRandomId(getPrng(), getTokenLength()));
+			tokens = RandomGenerator.generateRandomIds(getPrng(), getTokenLength(), staleUris.size());
 		} catch (Exception e) {
 			throw new RuntimeException(String.format("unable to generate the random token - %s", e.getLocalizedMessage()), e);
 		}
+
+		for (int i = 0; i < tokens.length; i++) {
+			((PageTokenMap) pageTokens).putIfAbsentOrStale(staleUris.get(i), tokens[i]);
+		}
+	}
+
+	/**
+	 * invalidate all the page tokens of the session.  If the session uses a PageTokenMap this
+	 * is O(1) and the tokens are regenerated when next used, otherwise they are all regenerated now
+	 * @param session
+	 */
+	public void rotatePageTokens(HttpSession session) {
+		@SuppressWarnings("unchecked")
+		Map<String, String> pageTokens = (Map<String, String>) session.getAttribute(CsrfGuard.PAGE_TOKENS_KEY);
+
+		if (pageTokens instanceof PageTokenMap) {
+			((PageTokenMap) pageTokens).rotate();
+		} else if (pageTokens != null) {
+			try {
+				RandomGenerator.regenerateRandomIds(getPrng(), getTokenLength(), pageTokens);
+			} catch (Exception e) {
+				throw new RuntimeException(String.format("unable to generate the random token - %s", e.getLocalizedMessage()), e);
+			}
+		}
 	}
 
 	public void writeLandingPage(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -495,6 +738,7 @@ public final class CsrfGuard {
 		sb.append(String.format("* Logger: %s\r\n", getLogger().getClass().getName()));
 		sb.append(String.format("* NewTokenLandingPage: %s\r\n", getNewTokenLandingPage()));
 		sb.append(String.format("* PRNG: %s\r\n", getPrng().getAlgorithm()));
+		sb.append(String.format("* PRNG seeding millis: %s (non blocking source: %s)\r\n", PrngSeeder.getSeedingMillis(), PrngSeeder.isSeededNonBlocking()));
 		sb.append(String.format("* SessionKey: %s\r\n", getSessionKey()));
 		sb.append(String.format("* TokenLength: %s\r\n", getTokenLength()));
 		sb.append(String.format("* TokenName: %s\r\n", getTokenName()));
@@ -515,6 +759,8 @@ public final class CsrfGuard {
 		sb.append(String.format("* TokenPerPage: %s\r\n", isTokenPerPageEnabled()));
 		sb.append(String.format("* Enabled: %s\r\n", isEnabled()));
 		sb.append(String.format("* ValidateWhenNoSessionExists: %s\r\n", isValidateWhenNoSessionExists()));
+		sb.append(String.format("* AsyncActions: %s\r\n", isAsyncActions()));
+		sb.append(String.format("* Throttle: %s\r\n", getFailureThrottle() != null));
 		
 		for (IAction action : getActions()) {
 			sb.append(String.format("* Action: %s\r\n", action.getClass().getName()));
@@ -541,6 +787,7 @@ public final class CsrfGuard {
 
 		if (tokenFromRequest == null) {
 			/** FAIL: token is missing from the request **/
+			CsrfGuardMetrics.getInstance().rejected(RejectionCause.MissingToken);
 			throw new CsrfGuardException("required token is missing from the request");
 		} else {
 			//if there are two headers, then the result is comma separated
@@ -550,6 +797,7 @@ public final class CsrfGuard {
 				}
 				if (!tokenFromSession.equals(tokenFromRequest)) {
 					/** FAIL: the request token does not match the session token **/
+					CsrfGuardMetrics.getInstance().rejected(RejectionCause.SessionTokenMismatch);
 					throw new CsrfGuardException("request token does not match session token");
 				}
 			}
@@ -561,20 +809,23 @@ public final class CsrfGuard {
 		@SuppressWarnings("unchecked")
 		Map<String, String> pageTokens = (Map<String, String>) session.getAttribute(CsrfGuard.PAGE_TOKENS_KEY);
 
-		String tokenFromPages = (pageTokens != null ? pageTokens.get(request.getRequestURI()) : null);
+		String tokenFromPages = (pageTokens != null ? currentPageToken(pageTokens, request.getRequestURI()) : null);
 		String tokenFromSession = (String) session.getAttribute(getSessionKey());
 		String tokenFromRequest = request.getParameter(getTokenName());
 
 		if (tokenFromRequest == null) {
 			/** FAIL: token is missing from the request **/
+			CsrfGuardMetrics.getInstance().rejected(RejectionCause.MissingToken);
 			throw new CsrfGuardException("required token is missing from the request");
 		} else if (tokenFromPages != null) {
 			if (!tokenFromPages.equals(tokenFromRequest)) {
 				/** FAIL: request does not match page token **/
+				CsrfGuardMetrics.getInstance().rejected(RejectionCause.PageTokenMismatch);
 				throw new CsrfGuardException("request token does not match page token");
 			}
 		} else if (!tokenFromSession.equals(tokenFromRequest)) {
 			/** FAIL: the request token does not match the session token **/
+			CsrfGuardMetrics.getInstance().rejected(RejectionCause.SessionTokenMismatch);
 			throw new CsrfGuardException("request token does not match session token");
 		}
 	}
@@ -586,9 +837,11 @@ public final class CsrfGuard {
 
 		if (tokenFromRequest == null) {
 			/** FAIL: token is missing from the request **/
+			CsrfGuardMetrics.getInstance().rejected(RejectionCause.MissingToken);
 			throw new CsrfGuardException("required token is missing from the request");
 		} else if (!tokenFromSession.equals(tokenFromRequest)) {
 			/** FAIL: the request token does not match the session token **/
+			CsrfGuardMetrics.getInstance().rejected(RejectionCause.SessionTokenMismatch);
 			throw new CsrfGuardException("request token does not match session token");
 		}
 	}
@@ -596,30 +849,58 @@ public final class CsrfGuard {
 	private void rotateTokens(HttpServletRequest request) {
 		HttpSession session = request.getSession(true);
 
-		/** rotate master token **/
-		String tokenFromSession = null;
+		/** generate the master token and page token with one call to the PRNG **/
+		String[] tokens = null;
 
 		try {
-			tokenFromSession = RandomGenerator.generateRandomId(getPrng(), getTokenLength());
+			tokens = RandomGenerator.generateRandomIds(getPrng(), getTokenLength(), isTokenPerPageEnabled() ? 2 : 1);
 		} catch (Exception e) {
 			throw new RuntimeException(String.format("unable to generate the random token - %s", e.getLocalizedMessage()), e);
 		}
 
-		session.setAttribute(getSessionKey(), tokenFromSession);
+		/** rotate master token **/
+		session.setAttribute(getSessionKey(), tokens[0]);
+		CsrfGuardMetrics.getInstance().rotated();
 
 		/** rotate page token **/
 		if (isTokenPerPageEnabled()) {
 			@SuppressWarnings("unchecked")
 			Map<String, String> pageTokens = (Map<String, String>) session.getAttribute(CsrfGuard.PAGE_TOKENS_KEY);
 
-			try {
-				pageTokens.put(request.getRequestURI(), RandomGenerator.generateRandomId(getPrng(), getTokenLength()));
-			} catch (Exception e) {
-				throw new RuntimeException(String.format("unable to generate the random token - %s", e.getLocalizedMessage()), e);
+			if (pageTokens != null) {
+				pageTokens.put(request.getRequestURI(), tokens[1]);
 			}
 		}
 	}
 
+	/**
+	 * compile the regex patterns of the protected and unprotected pages ahead of the first request
+	 */
+	void compilePagePatterns() {
+		for (String protectedPage : getProtectedPages()) {
+			regexPattern(protectedPage);
+		}
+		for (String unprotectedPage : getUnprotectedPages()) {
+			regexPattern(unprotectedPage);
+		}
+	}
+
+	/**
+	 * @param testPath
+	 * @return the compiled pattern if the test path is a regex, otherwise null
+	 */
+	private Pattern regexPattern(String testPath) {
+		if (!isTestPathRegex(testPath)) {
+			return null;
+		}
+		Pattern pattern = this.regexPatternCache.get(testPath);
+		if (pattern == null) {
+			pattern = Pattern.compile(testPath);
+			this.regexPatternCache.put(testPath, pattern);
+		}
+		return pattern;
+	}
+
 	public boolean isProtectedPage(String uri) {
 
 		//if this is a javascript page, let it go through
@@ -685,6 +966,70 @@ public final class CsrfGuard {
 		return config().isPrintConfig();
 	}
 	
+	/**
+	 * @see ConfigurationProvider#getMetricsExporter()
+	 * @return the class name or null
+	 */
+	public String getMetricsExporter() {
+		return config().getMetricsExporter();
+	}
+	
+	/**
+	 * @see ConfigurationProvider#getMetricsExportIntervalSeconds()
+	 * @return the seconds
+	 */
+	public int getMetricsExportIntervalSeconds() {
+		return config().getMetricsExportIntervalSeconds();
+	}
+	
+	/**
+	 * @see ConfigurationProvider#getTracer()
+	 * @return the class name or null
+	 */
+	public String getTracer() {
+		return config().getTracer();
+	}
+	
+	/**
+	 * @see ConfigurationProvider#isAsyncActions()
+	 * @return true to run side effect actions async
+	 */
+	public boolean isAsyncActions() {
+		return config().isAsyncActions();
+	}
+	
+	/**
+	 * @see ConfigurationProvider#getAsyncActionsThreads()
+	 * @return the threads
+	 */
+	public int getAsyncActionsThreads() {
+		return config().getAsyncActionsThreads();
+	}
+	
+	/**
+	 * @see ConfigurationProvider#getAsyncActionsQueueSize()
+	 * @return the queue size
+	 */
+	public int getAsyncActionsQueueSize() {
+		return config().getAsyncActionsQueueSize();
+	}
+	
+	/**
+	 * @see ConfigurationProvider#getAsyncActionsWhenFull()
+	 * @return CallerRuns or Discard
+	 */
+	public String getAsyncActionsWhenFull() {
+		return config().getAsyncActionsWhenFull();
+	}
+	
+	/**
+	 * @see ConfigurationProvider#getFailureThrottle()
+	 * @return the throttle or null
+	 */
+	public FailureThrottle getFailureThrottle() {
+		return config().getFailureThrottle();
+	}
+	
 	/**
 	 * FIXME: taken from Tomcat - ApplicationFilterFactory
 	 * 
@@ -695,14 +1040,8 @@ public final class CsrfGuard {
 	private boolean isUriMatch(String testPath, String requestPath) {
 
 		//case 4, if it is a regex
-		if (isTestPathRegex(testPath)) {
-			
-			Pattern pattern = this.regexPatternCache.get(testPath);
-			if (pattern == null) {
-				pattern = Pattern.compile(testPath);
-				this.regexPatternCache.put(testPath, pattern);
-			}
-			
+		Pattern pattern = regexPattern(testPath);
+		if (pattern != null) {
 			return pattern.matcher(requestPath).matches();
 		}
 		
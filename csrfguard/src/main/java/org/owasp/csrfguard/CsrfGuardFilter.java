@@ -40,21 +40,41 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
+import org.owasp.csrfguard.http.AsyncRequestSupport;
 import org.owasp.csrfguard.http.InterceptRedirectResponse;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics.Bypass;
+import org.owasp.csrfguard.metrics.ITracer;
+import org.owasp.csrfguard.metrics.ITracer.Stage;
+import org.owasp.csrfguard.throttle.FailureThrottle;
 
 public final class CsrfGuardFilter implements Filter {
 
 	/**
-	 * store the request object as a threadlocal
+	 * get the http servlet request the filter is working on in this thread
+	 * @see CsrfGuardRequestContext
+	 * @return the request
 	 */
-	private static InheritableThreadLocal<HttpServletRequest> requestThreadLocal = new InheritableThreadLocal<HttpServletRequest>();
+	public static HttpServletRequest httpServletRequest() {
+		return CsrfGuardRequestContext.current();
+	}
 	
 	/**
-	 * get the http servlet request from threadlocal
-	 * @return the request
+	 * if the container supports servlet 3.0 async requests.  AsyncRequestSupport
+	 * must not be used otherwise since it needs the servlet 3.0 classes
 	 */
-	public static HttpServletRequest httpServletRequest() {
-		return requestThreadLocal.get();
+	private static final boolean ASYNC_SUPPORTED = asyncSupported();
+	
+	/**
+	 * @return true if the servlet api in the container has async requests
+	 */
+	private static boolean asyncSupported() {
+		try {
+			ServletRequest.class.getMethod("isAsyncStarted");
+			return true;
+		} catch (NoSuchMethodException nsme) {
+			return false;
+		}
 	}
 	
 	private FilterConfig filterConfig = null;
@@ -67,16 +87,26 @@ public final class CsrfGuardFilter implements Filter {
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws IOException, ServletException {
 
+		//keep the outer request if this is a nested dispatch
+		HttpServletRequest previousRequest = CsrfGuardRequestContext.current();
+		
+		long startNanos = System.nanoTime();
+		CsrfGuardMetrics metrics = CsrfGuardMetrics.getInstance();
+		
 		try {
 
 			if (request instanceof HttpServletRequest) {
 				
-				requestThreadLocal.set((HttpServletRequest)request);
+				CsrfGuardRequestContext.attach((HttpServletRequest)request);
 				
 			}
 
+			//the first requests wait until startup has seeded the prng etc, or until it times out
+			CsrfGuardStartup.awaitStartup();
+			
 			//maybe the short circuit to disable is set
 			if (!CsrfGuard.getInstance().isEnabled()) {
+				metrics.bypassed(Bypass.Disabled);
 				filterChain.doFilter(request, response);
 				return;
 			}
@@ -86,11 +116,26 @@ public final class CsrfGuardFilter implements Filter {
 				
 				HttpServletRequest httpRequest = (HttpServletRequest) request;
 				
+				if (ASYNC_SUPPORTED && AsyncRequestSupport.isAsyncDispatch(httpRequest)) {
+					/** validated on the original dispatch, tokens are updated when the async response completes **/
+					CsrfGuard csrfGuard = CsrfGuard.getInstance();
+					metrics.bypassed(Bypass.AsyncDispatch);
+					filterChain.doFilter(httpRequest, new InterceptRedirectResponse((HttpServletResponse) response, httpRequest, csrfGuard));
+					return;
+				}
+				
+				ITracer tracer = CsrfGuardMetrics.tracer();
+				
+				long traceStart = tracer == null ? 0 : tracer.start(Stage.Session);
 				HttpSession session = httpRequest.getSession(false);
+				if (tracer != null) {
+					tracer.end(Stage.Session, traceStart);
+				}
 				
 				//if there is no session and we arent validating when no session exists
 				if (session == null && !CsrfGuard.getInstance().isValidateWhenNoSessionExists()) {
 					// If there is no session, no harm can be done
+					metrics.bypassed(Bypass.NoSession);
 					filterChain.doFilter(httpRequest, (HttpServletResponse) response);
 					return;
 				}
@@ -98,22 +143,46 @@ public final class CsrfGuardFilter implements Filter {
 				CsrfGuard csrfGuard = CsrfGuard.getInstance();
 				csrfGuard.getLogger().log(String.format("CsrfGuard analyzing request %s", httpRequest.getRequestURI()));
 	
+				boolean landingPage = (session != null && session.isNew()) && csrfGuard.isUseNewTokenLandingPage();
+	
+				/** clients with too many rejected requests are rejected before the token work, only where a token is checked **/
+				FailureThrottle failureThrottle = csrfGuard.getFailureThrottle();
+				if (failureThrottle != null && !landingPage && failureThrottle.isBlocked(httpRequest) 
+						&& csrfGuard.isProtectedPageAndMethod(httpRequest)) {
+					metrics.throttled();
+					failureThrottle.reject(httpRequest, (HttpServletResponse) response);
+					return;
+				}
+	
 				InterceptRedirectResponse httpResponse = new InterceptRedirectResponse((HttpServletResponse) response, httpRequest, csrfGuard);
 	
 	//			 if(MultipartHttpServletRequest.isMultipartRequest(httpRequest)) {
 	//				 httpRequest = new MultipartHttpServletRequest(httpRequest);
 	//			 }
 	
-				if ((session != null && session.isNew()) && csrfGuard.isUseNewTokenLandingPage()) {
+				if (landingPage) {
 					csrfGuard.writeLandingPage(httpRequest, httpResponse);
 				} else if (csrfGuard.isValidRequest(httpRequest, httpResponse)) {
-					filterChain.doFilter(httpRequest, httpResponse);
+					traceStart = tracer == null ? 0 : tracer.start(Stage.Chain);
+					try {
+						filterChain.doFilter(httpRequest, httpResponse);
+					} finally {
+						if (tracer != null) {
+							tracer.end(Stage.Chain, traceStart);
+						}
+					}
 				} else {
 					/** invalid request - nothing to do - actions already executed **/
 				}
 	
-				/** update tokens **/
-				csrfGuard.updateTokens(httpRequest);
+				/** update tokens, once the response completes if the request went async **/
+				if (!ASYNC_SUPPORTED || !AsyncRequestSupport.updateTokensOnComplete(httpRequest, csrfGuard)) {
+					traceStart = tracer == null ? 0 : tracer.start(Stage.UpdateTokens);
+					csrfGuard.updateTokens(httpRequest);
+					if (tracer != null) {
+						tracer.end(Stage.UpdateTokens, traceStart);
+					}
+				}
 	
 			} else {
 				filterConfig.getServletContext().log(String.format("[WARNING] CsrfGuard does not know how to work with requests of class %s ", request.getClass().getName()));
@@ -121,8 +190,12 @@ public final class CsrfGuardFilter implements Filter {
 				filterChain.doFilter(request, response);
 			}
 		} finally {
-			//remove the threadlocal
-			requestThreadLocal.remove();
+			//restore the threadlocal, removes it if this is the outermost dispatch
+			CsrfGuardRequestContext.restore(previousRequest);
+			
+			if (request instanceof HttpServletRequest) {
+				metrics.requestFiltered(System.nanoTime() - startNanos);
+			}
 		}
 	}
 
@@ -0,0 +1,142 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * JMX view of the CsrfGuard configuration and caches, registered as org.owasp.csrfguard:type=CsrfGuard,context=(context path).
+ * Lets operators see which configuration is live and reload it without restarting the webapp.
+ */
+public interface CsrfGuardMXBean {
+
+	/**
+	 * @return the class of the configuration provider in use
+	 */
+	String getProviderClass();
+
+	/**
+	 * @return the class of the configuration provider factory from the properties file
+	 */
+	String getProviderFactoryClass();
+
+	/**
+	 * @return number of times the configuration was built or changed since startup
+	 */
+	long getConfigVersion();
+
+	/**
+	 * @return when the current configuration was built, or null if not yet
+	 */
+	Date getConfigTimestamp();
+
+	/**
+	 * @return number of protected page patterns
+	 */
+	int getProtectedPageCount();
+
+	/**
+	 * @return number of unprotected page patterns
+	 */
+	int getUnprotectedPageCount();
+
+	/**
+	 * @return number of compiled regex page patterns
+	 */
+	int getRegexPatternCount();
+
+	/**
+	 * @return algorithm of the token PRNG
+	 */
+	String getPrngAlgorithm();
+
+	/**
+	 * @return provider of the token PRNG
+	 */
+	String getPrngProvider();
+
+	/**
+	 * @return true once the PRNG has been seeded
+	 */
+	boolean isPrngReady();
+
+	/**
+	 * @return millis it took to seed the PRNG
+	 */
+	long getPrngSeedingMillis();
+
+	/**
+	 * @return true if the PRNG was seeded from a non-blocking source
+	 */
+	boolean isPrngSeededNonBlocking();
+
+	/**
+	 * @return inserts, evictions, hits and size of the configuration provider cache
+	 */
+	Map<String, Long> getConfigCacheStats();
+
+	/**
+	 * @return inserts, evictions and hits of all the expirable caches together
+	 */
+	Map<String, Long> getGlobalCacheStats();
+
+	/**
+	 * @return millis each startup component took, by component
+	 */
+	Map<String, Long> getStartupTimings();
+
+	/**
+	 * @return the clients blocked by the throttle and when each block ends, empty if the throttle is off
+	 */
+	Map<String, Date> getBlockedClients();
+
+	/**
+	 * @param client ip address or session id
+	 * @return true if the client was blocked
+	 */
+	boolean unblockClient(String client);
+
+	/**
+	 * unblock all the clients and forget their rejected requests
+	 */
+	void clearThrottle();
+
+	/**
+	 * read the config files again and rebuild the configuration now
+	 * @return the config version after the reload
+	 */
+	long reloadConfig();
+
+	/**
+	 * clear the compiled page patterns and the expirable caches
+	 */
+	void clearCaches();
+
+}
@@ -0,0 +1,223 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.owasp.csrfguard.config.overlay.ExpirableCache;
+import org.owasp.csrfguard.log.LogLevel;
+import org.owasp.csrfguard.throttle.FailureThrottle;
+import org.owasp.csrfguard.util.CsrfGuardUtils;
+import org.owasp.csrfguard.util.PrngSeeder;
+
+/**
+ * the CsrfGuardMXBean, registered by the CsrfGuardServletContextListener
+ */
+public final class CsrfGuardManagement implements CsrfGuardMXBean {
+
+	/**
+	 * name it is registered under, null if not registered
+	 */
+	private static ObjectName objectName = null;
+
+	/**
+	 * use register()
+	 */
+	private CsrfGuardManagement() {
+	}
+
+	/**
+	 * @return the guard
+	 */
+	private static CsrfGuard csrfGuard() {
+		return CsrfGuard.getInstance();
+	}
+
+	@Override
+	public String getProviderClass() {
+		return csrfGuard().getConfigurationProviderClassName();
+	}
+
+	@Override
+	public String getProviderFactoryClass() {
+		return csrfGuard().getConfigurationProviderFactoryClassName();
+	}
+
+	@Override
+	public long getConfigVersion() {
+		return CsrfGuard.getConfigVersion();
+	}
+
+	@Override
+	public Date getConfigTimestamp() {
+		long timestamp = CsrfGuard.getConfigTimestamp();
+		return timestamp == 0 ? null : new Date(timestamp);
+	}
+
+	@Override
+	public int getProtectedPageCount() {
+		return csrfGuard().getProtectedPages().size();
+	}
+
+	@Override
+	public int getUnprotectedPageCount() {
+		return csrfGuard().getUnprotectedPages().size();
+	}
+
+	@Override
+	public int getRegexPatternCount() {
+		return csrfGuard().getRegexPatternCount();
+	}
+
+	@Override
+	public String getPrngAlgorithm() {
+		return csrfGuard().getPrng().getAlgorithm();
+	}
+
+	@Override
+	public String getPrngProvider() {
+		return csrfGuard().getPrng().getProvider().getName();
+	}
+
+	@Override
+	public boolean isPrngReady() {
+		return PrngSeeder.isReady();
+	}
+
+	@Override
+	public long getPrngSeedingMillis() {
+		return PrngSeeder.getSeedingMillis();
+	}
+
+	@Override
+	public boolean isPrngSeededNonBlocking() {
+		return PrngSeeder.isSeededNonBlocking();
+	}
+
+	@Override
+	public Map<String, Long> getConfigCacheStats() {
+		ExpirableCache<?, ?> cache = CsrfGuard.getConfigurationProviderCache();
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("inserts", (long)cache.getCacheInserts());
+		stats.put("evictions", (long)cache.getCacheEvictions());
+		stats.put("hits", (long)cache.getCacheHits());
+		stats.put("size", (long)cache.size(false));
+		return stats;
+	}
+
+	@Override
+	public Map<String, Long> getGlobalCacheStats() {
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("inserts", ExpirableCache.getGlobalCacheInserts());
+		stats.put("evictions", ExpirableCache.getGlobalCacheEvictions());
+		stats.put("hits", ExpirableCache.getGlobalCacheHits());
+		return stats;
+	}
+
+	@Override
+	public Map<String, Long> getStartupTimings() {
+		return CsrfGuardStartup.getComponentTimings();
+	}
+
+	@Override
+	public Map<String, Date> getBlockedClients() {
+		FailureThrottle failureThrottle = csrfGuard().getFailureThrottle();
+		return failureThrottle == null ? Collections.<String, Date>emptyMap() : failureThrottle.getBlocked();
+	}
+
+	@Override
+	public boolean unblockClient(String client) {
+		FailureThrottle failureThrottle = csrfGuard().getFailureThrottle();
+		return failureThrottle != null && failureThrottle.unblock(client);
+	}
+
+	@Override
+	public void clearThrottle() {
+		FailureThrottle failureThrottle = csrfGuard().getFailureThrottle();
+		if (failureThrottle != null) {
+			failureThrottle.clear();
+		}
+	}
+
+	@Override
+	public long reloadConfig() {
+		long version = csrfGuard().reloadConfig();
+		csrfGuard().getLogger().log(LogLevel.Info, "CsrfGuard configuration reloaded through JMX, version " + version);
+		return version;
+	}
+
+	@Override
+	public void clearCaches() {
+		csrfGuard().clearCaches();
+	}
+
+	/**
+	 * register the MXBean with the platform MBean server, if it is not registered yet
+	 * @param contextPath of the webapp, so several webapps can each register theirs
+	 */
+	public static synchronized void register(String contextPath) {
+		if (objectName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName("org.owasp.csrfguard:type=CsrfGuard,context=" 
+					+ ObjectName.quote(CsrfGuardUtils.isBlank(contextPath) ? "/" : contextPath));
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			if (!mBeanServer.isRegistered(name)) {
+				mBeanServer.registerMBean(new CsrfGuardManagement(), name);
+				objectName = name;
+			}
+		} catch (Exception e) {
+			//management is not worth failing the webapp for
+			csrfGuard().getLogger().log(LogLevel.Warning, e);
+		}
+	}
+
+	/**
+	 * unregister the MXBean, e.g. when the webapp stops
+	 */
+	public static synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				csrfGuard().getLogger().log(LogLevel.Warning, e);
+			}
+			objectName = null;
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Holds the request the CsrfGuardFilter is working on for the current thread.
+ * This is deliberately not inheritable: threads started while a request is
+ * running (e.g. pool threads created on demand) would otherwise keep a
+ * reference to that request forever.  To use the request on another thread
+ * (executors, async servlets, virtual threads), capture it explicitly with
+ * {@link #wrap(Runnable)} or {@link #wrap(Callable)}.
+ */
+public final class CsrfGuardRequestContext {
+
+	/**
+	 * the request for the current thread, only set while the filter (or a wrapped task) runs
+	 */
+	private static final ThreadLocal<HttpServletRequest> currentRequest = new ThreadLocal<HttpServletRequest>();
+
+	private CsrfGuardRequestContext() {
+		
+	}
+
+	/**
+	 * @return the request for the current thread or null if none
+	 */
+	public static HttpServletRequest current() {
+		return currentRequest.get();
+	}
+
+	/**
+	 * set the request for the current thread
+	 * @param request
+	 * @return the request that was set before, pass it to {@link #restore(HttpServletRequest)} when done
+	 */
+	public static HttpServletRequest attach(HttpServletRequest request) {
+		HttpServletRequest previous = currentRequest.get();
+		currentRequest.set(request);
+		return previous;
+	}
+
+	/**
+	 * put back the request returned from {@link #attach(HttpServletRequest)}, removing the
+	 * threadlocal entirely if there was none so pooled threads keep no reference
+	 * @param previous
+	 */
+	public static void restore(HttpServletRequest previous) {
+		if (previous == null) {
+			currentRequest.remove();
+		} else {
+			currentRequest.set(previous);
+		}
+	}
+
+	/**
+	 * capture the request of the current thread so the task sees it when it runs on another thread
+	 * @param task
+	 * @return the wrapped task
+	 */
+	public static Runnable wrap(final Runnable task) {
+		final HttpServletRequest captured = current();
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				HttpServletRequest previous = attach(captured);
+				try {
+					task.run();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * capture the request of the current thread so the task sees it when it runs on another thread
+	 * @param task
+	 * @return the wrapped task
+	 */
+	public static <V> Callable<V> wrap(final Callable<V> task) {
+		final HttpServletRequest captured = current();
+		return new Callable<V>() {
+
+			@Override
+			public V call() throws Exception {
+				HttpServletRequest previous = attach(captured);
+				try {
+					return task.call();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+}
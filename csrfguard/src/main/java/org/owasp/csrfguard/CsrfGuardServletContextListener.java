@@ -10,7 +10,12 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import org.owasp.csrfguard.action.AggregateLog;
+import org.owasp.csrfguard.action.AsyncActionExecutor;
+import org.owasp.csrfguard.config.overlay.ConfigPropertiesCascadeBase;
 import org.owasp.csrfguard.config.overlay.ConfigurationOverlayProvider;
+import org.owasp.csrfguard.config.overlay.ExpirableCache;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
 import org.owasp.csrfguard.util.Streams;
 
 public class CsrfGuardServletContextListener implements ServletContextListener {
@@ -62,6 +67,7 @@ public class CsrfGuardServletContextListener implements ServletContextListener {
 
 		InputStream is = null;
 		Properties properties = new Properties();
+		int startupTimeoutSeconds = CsrfGuardStartup.DEFAULT_TIMEOUT_SECONDS;
 
 		try {
 			is = getResourceStream(configFileName, context, false);
@@ -76,6 +82,11 @@ public class CsrfGuardServletContextListener implements ServletContextListener {
 			
 			properties.load(is);
 			CsrfGuard.load(properties);
+			
+			String startupTimeout = properties.getProperty(CsrfGuardStartup.TIMEOUT_SECONDS_PROPERTY);
+			if (startupTimeout != null && startupTimeout.trim().length() != 0) {
+				startupTimeoutSeconds = Integer.parseInt(startupTimeout.trim());
+			}
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		} finally {
@@ -83,7 +94,11 @@ public class CsrfGuardServletContextListener implements ServletContextListener {
 		}
 
 
-		printConfigIfConfigured(context, "Printing properties before Javascript servlet, note, the javascript properties might not be initialized yet: ");
+		/** build the configuration (a misconfiguration fails here), seed the prng, print the config, etc in the background, the filter waits for it **/
+		CsrfGuardStartup.start(context, startupTimeoutSeconds);
+		
+		CsrfGuardMetrics.registerMBean(servletContext);
+		CsrfGuardManagement.register(servletContext);
 	}
 
 	/**
@@ -105,7 +120,15 @@ public class CsrfGuardServletContextListener implements ServletContextListener {
 
 	@Override
 	public void contextDestroyed(ServletContextEvent event) {
-		/** nothing to do **/
+		/** stop the thread that checks the config overlay for changes **/
+		ConfigPropertiesCascadeBase.shutdownConfigReloader();
+		ExpirableCache.shutdownEvictionSweeper();
+		CsrfGuardStartup.shutdown();
+		/** run the queued actions before the last metrics export **/
+		AsyncActionExecutor.shutdown();
+		CsrfGuardMetrics.shutdown();
+		CsrfGuardManagement.unregister();
+		AggregateLog.shutdown();
 	}
 
 	private InputStream getResourceStream(String resourceName, ServletContext context, boolean failIfNotFound) throws IOException {
@@ -0,0 +1,315 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletContext;
+
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
+
+/**
+ * Initializes the expensive parts of CSRFGuard when the webapp starts instead of on the first
+ * request: the configuration (logger, actions, pages), the page regex patterns, seeding the PRNG,
+ * printing the config and starting the metrics exporter and tracer.  The configuration is built on the
+ * starting thread, so a misconfiguration fails the webapp startup.  The rest run on a small startup executor,
+ * in parallel.  The CsrfGuardFilter waits for them before the first request (see {@link #awaitStartup()}),
+ * up to a timeout, and the time each took is logged to the servlet context.  If a component fails or does
+ * not finish in time it is logged, and it is initialized lazily on first use like before.
+ */
+public final class CsrfGuardStartup {
+
+	/**
+	 * max threads used to start up
+	 */
+	private static final int MAX_THREADS = 2;
+
+	/**
+	 * property with the seconds requests wait for the startup before they go on without it, read from the 
+	 * properties file
+	 */
+	public static final String TIMEOUT_SECONDS_PROPERTY = "org.owasp.csrfguard.StartupTimeoutSeconds";
+
+	/**
+	 * default for {@link #TIMEOUT_SECONDS_PROPERTY}
+	 */
+	public static final int DEFAULT_TIMEOUT_SECONDS = 60;
+
+	/**
+	 * the startup in progress, null once it is done
+	 */
+	private static volatile CsrfGuardStartup current = null;
+
+	/**
+	 * millis each component took in the last startup, in the order they were submitted
+	 */
+	private static volatile Map<String, Long> componentTimings = Collections.emptyMap();
+
+	/**
+	 * runs the components
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * counted down once all the components are done
+	 */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * components not done yet
+	 */
+	private final AtomicInteger remaining = new AtomicInteger(0);
+
+	/**
+	 * set by whoever finishes the startup first (the last component, a shutdown or a timeout)
+	 */
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+
+	/**
+	 * component names in the order they were submitted
+	 */
+	private final List<String> names = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * millis each component took
+	 */
+	private final Map<String, Long> timings = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * servlet context to log to
+	 */
+	private final ServletContext context;
+
+	/**
+	 * when the startup began
+	 */
+	private final long startNanos = System.nanoTime();
+
+	/**
+	 * seconds a request waits for the startup
+	 */
+	private final int timeoutSeconds;
+
+	/**
+	 * @param context
+	 * @param timeoutSeconds
+	 */
+	private CsrfGuardStartup(ServletContext context, int timeoutSeconds) {
+		this.context = context;
+		this.timeoutSeconds = timeoutSeconds;
+		this.executor = Executors.newFixedThreadPool(MAX_THREADS, new ThreadFactory() {
+
+			private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "CsrfGuard startup " + this.threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * start initializing, call after CsrfGuard.load().  The configuration is built before this returns
+	 * @param context
+	 * @param timeoutSeconds how long requests wait for the startup before they go on without it
+	 * @throws RuntimeException if the configuration cannot be built, so the webapp does not start misconfigured
+	 */
+	public static void start(final ServletContext context, int timeoutSeconds) {
+		CsrfGuardStartup startup = new CsrfGuardStartup(context, timeoutSeconds);
+
+		/** builds the provider: logger, actions, pages.  The other components need it **/
+		startup.names.add("configuration");
+		long configurationStart = System.nanoTime();
+		try {
+			CsrfGuard.getInstance().getLogger();
+		} catch (RuntimeException re) {
+			context.log("CsrfGuard startup: configuration failed", re);
+			startup.executor.shutdownNow();
+			throw re;
+		}
+		startup.timings.put("configuration", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - configurationStart));
+		
+		//count all of them first so the last one to finish knows it
+		startup.remaining.set(4);
+		current = startup;
+
+		/** these only need the configuration, so run in parallel **/
+		startup.submit("pagePatterns", new Runnable() {
+
+			public void run() {
+				CsrfGuard.getInstance().compilePagePatterns();
+			}
+		});
+		
+		startup.submit("prng", new Runnable() {
+
+			public void run() {
+				//seeded when the configuration is built, see PrngSeeder
+				CsrfGuard.getInstance().getPrng().nextBytes(new byte[1]);
+			}
+		});
+		
+		startup.submit("printConfig", new Runnable() {
+
+			public void run() {
+				CsrfGuardServletContextListener.printConfigIfConfigured(context, 
+						"Printing properties before Javascript servlet, note, the javascript properties might not be initialized yet: ");
+			}
+		});
+		
+		startup.submit("metrics", new Runnable() {
+
+			public void run() {
+				CsrfGuard csrfGuard = CsrfGuard.getInstance();
+				CsrfGuardMetrics.startExporter(csrfGuard.getMetricsExporter(), csrfGuard.getMetricsExportIntervalSeconds());
+				CsrfGuardMetrics.startTracer(csrfGuard.getTracer());
+			}
+		});
+	}
+
+	/**
+	 * wait for the startup to finish if it is running, up to the timeout, this returns right away once it is done.
+	 * If it does not finish in time this is logged and the startup is given up, so no later request waits for it,
+	 * and the components left are initialized on first use
+	 */
+	public static void awaitStartup() {
+		CsrfGuardStartup startup = current;
+		if (startup == null) {
+			return;
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(startup.timeoutSeconds);
+		boolean interrupted = false;
+		boolean done = false;
+		while (true) {
+			try {
+				done = startup.done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				break;
+			} catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (!done && !startup.finished.get()) {
+			startup.context.log("CsrfGuard startup did not finish in " + startup.timeoutSeconds + " seconds (" 
+					+ startup.remaining.get() + " components left), they will initialize on first use");
+			startup.finish();
+		}
+	}
+
+	/**
+	 * stop the startup if it is still running (e.g. the webapp is stopped right away)
+	 */
+	public static void shutdown() {
+		CsrfGuardStartup startup = current;
+		if (startup != null) {
+			startup.executor.shutdownNow();
+			startup.finish();
+		}
+	}
+
+	/**
+	 * millis each component took in the last startup
+	 * @return the timings by component name
+	 */
+	public static Map<String, Long> getComponentTimings() {
+		return componentTimings;
+	}
+
+	/**
+	 * @param name
+	 * @param component
+	 */
+	private void submit(final String name, final Runnable component) {
+		this.names.add(name);
+		this.executor.execute(new Runnable() {
+
+			public void run() {
+				try {
+					long start = System.nanoTime();
+					component.run();
+					CsrfGuardStartup.this.timings.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				} catch (RuntimeException re) {
+					CsrfGuardStartup.this.context.log("CsrfGuard startup: " + name + " failed, will initialize on first use", re);
+				} finally {
+					if (CsrfGuardStartup.this.remaining.decrementAndGet() == 0) {
+						CsrfGuardStartup.this.finish();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * report the timings and let requests through
+	 */
+	private void finish() {
+		if (!this.finished.compareAndSet(false, true)) {
+			return;
+		}
+		Map<String, Long> timingsCopy = new LinkedHashMap<String, Long>();
+		for (String name : this.names) {
+			Long millis = this.timings.get(name);
+			//didnt finish
+			if (millis != null) {
+				timingsCopy.put(name, millis);
+			}
+		}
+		timingsCopy = Collections.unmodifiableMap(timingsCopy);
+		componentTimings = timingsCopy;
+		
+		StringBuilder report = new StringBuilder("CsrfGuard startup timings (millis): ");
+		for (Map.Entry<String, Long> timing : timingsCopy.entrySet()) {
+			report.append(timing.getKey()).append("=").append(timing.getValue()).append(", ");
+		}
+		report.append("total=").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos));
+		this.context.log(report.toString());
+
+		if (current == this) {
+			current = null;
+		}
+		this.done.countDown();
+		this.executor.shutdown();
+	}
+
+}
@@ -0,0 +1,235 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The page tokens of a session (uri to token), stored in the session under
+ * CsrfGuard.PAGE_TOKENS_KEY.  The map keeps a generation number so that rotating all the
+ * page tokens is O(1): rotate() bumps the generation, and a token stored under an older
+ * generation is regenerated by CsrfGuard the first time the uri is touched again (token
+ * lookup, verification, or when all the tokens are written out).  This gives the same
+ * invalidation as regenerating every token up front, but only pays for the pages that
+ * are actually used.
+ * <p />
+ * Thread safe, concurrent requests of a session share it: each token is stored with its generation
+ * in one value, and a stale token is replaced with a compare and set so concurrent requests regenerating
+ * it agree on one token.  The views (entrySet, keySet, values) are read only, change the tokens with
+ * put, remove and clear, so the generations cannot get out of sync with the tokens.
+ * <p />
+ * Note, get() returns the stored value which might be from a previous generation, use
+ * CsrfGuard to get the current token of a page.
+ */
+public class PageTokenMap extends AbstractMap<String, String> implements Serializable {
+
+	private static final long serialVersionUID = 6180436519632722573L;
+
+	/**
+	 * current generation, incremented on each rotation
+	 */
+	private final AtomicLong generation = new AtomicLong(0);
+
+	/**
+	 * uri to the token and the generation it was created in
+	 */
+	private final ConcurrentHashMap<String, PageToken> tokens = new ConcurrentHashMap<String, PageToken>();
+
+	/**
+	 * read only view of the tokens
+	 */
+	private transient Set<Map.Entry<String, String>> entrySet = null;
+
+	/**
+	 * a token and the generation it was created in, immutable
+	 */
+	private static final class PageToken implements Serializable {
+
+		private static final long serialVersionUID = -4950273380874407962L;
+
+		private final String token;
+
+		private final long generation;
+
+		/**
+		 * @param token
+		 * @param generation
+		 */
+		private PageToken(String token, long generation) {
+			this.token = token;
+			this.generation = generation;
+		}
+	}
+
+	public PageTokenMap() {
+		super();
+	}
+
+	/**
+	 * current generation, incremented on each rotation
+	 * @return the generation
+	 */
+	public long getGeneration() {
+		return this.generation.get();
+	}
+
+	/**
+	 * invalidate all page tokens, they will be regenerated when next used
+	 */
+	public void rotate() {
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * if there is a token for the uri and it is from the current generation
+	 * @param uri
+	 * @return true if current
+	 */
+	public boolean isCurrent(String uri) {
+		PageToken pageToken = this.tokens.get(uri);
+		return pageToken != null && pageToken.generation == this.generation.get();
+	}
+
+	/**
+	 * @return the uris whose tokens are from a previous generation
+	 */
+	public List<String> staleUris() {
+		List<String> result = new ArrayList<String>();
+		long currentGeneration = this.generation.get();
+
+		for (Map.Entry<String, PageToken> entry : this.tokens.entrySet()) {
+			if (entry.getValue().generation != currentGeneration) {
+				result.add(entry.getKey());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * store the token if there is no token for the uri or it is from a previous generation.  If another
+	 * request stored a current token first, that one is kept
+	 * @param uri
+	 * @param token
+	 * @return true if the token was stored
+	 */
+	public boolean putIfAbsentOrStale(String uri, String token) {
+		PageToken pageToken = new PageToken(token, this.generation.get());
+
+		while (true) {
+			PageToken previous = this.tokens.get(uri);
+			if (previous == null) {
+				if (this.tokens.putIfAbsent(uri, pageToken) == null) {
+					return true;
+				}
+			} else if (previous.generation >= pageToken.generation) {
+				return false;
+			} else if (this.tokens.replace(uri, previous, pageToken)) {
+				return true;
+			}
+		}
+	}
+
+	@Override
+	public String get(Object uri) {
+		PageToken pageToken = this.tokens.get(uri);
+		return pageToken == null ? null : pageToken.token;
+	}
+
+	@Override
+	public boolean containsKey(Object uri) {
+		return this.tokens.containsKey(uri);
+	}
+
+	@Override
+	public int size() {
+		return this.tokens.size();
+	}
+
+	@Override
+	public String put(String uri, String token) {
+		PageToken previous = this.tokens.put(uri, new PageToken(token, this.generation.get()));
+		return previous == null ? null : previous.token;
+	}
+
+	@Override
+	public String remove(Object uri) {
+		PageToken previous = this.tokens.remove(uri);
+		return previous == null ? null : previous.token;
+	}
+
+	@Override
+	public void clear() {
+		this.tokens.clear();
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		if (this.entrySet == null) {
+			this.entrySet = new AbstractSet<Map.Entry<String, String>>() {
+
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					final Iterator<Map.Entry<String, PageToken>> iterator = PageTokenMap.this.tokens.entrySet().iterator();
+					return new Iterator<Map.Entry<String, String>>() {
+
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						public Map.Entry<String, String> next() {
+							Map.Entry<String, PageToken> entry = iterator.next();
+							return new AbstractMap.SimpleImmutableEntry<String, String>(entry.getKey(), entry.getValue().token);
+						}
+
+						public void remove() {
+							throw new UnsupportedOperationException("page tokens are changed with put, remove and clear");
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return PageTokenMap.this.tokens.size();
+				}
+			};
+		}
+		return this.entrySet;
+	}
+
+}
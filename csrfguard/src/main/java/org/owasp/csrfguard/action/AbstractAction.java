@@ -30,7 +30,7 @@ package org.owasp.csrfguard.action;
 
 import java.util.*;
 
-public abstract class AbstractAction implements IAction {
+public abstract class AbstractAction implements IInitializableAction {
 
 	private static final long serialVersionUID = -1654117674049587348L;
 
@@ -68,5 +68,13 @@ public abstract class AbstractAction implements IAction {
 	public Map<String, String> getParameterMap() {
 		return parameters;
 	}
+
+	/**
+	 * nothing to do by default, actions with parameters read them here
+	 * @see org.owasp.csrfguard.action.IInitializableAction#init()
+	 */
+	@Override
+	public void init() {
+	}
 	
 }
@@ -0,0 +1,128 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.action;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.CsrfGuardException;
+import org.owasp.csrfguard.log.LogLevel;
+
+/**
+ * the configured actions in order, built once with the configuration, which are called when a request 
+ * is rejected.  Immutable
+ */
+public final class ActionChain {
+
+	/**
+	 * chain with no actions
+	 */
+	public static final ActionChain EMPTY = new ActionChain(Collections.<IAction>emptyList());
+
+	private final IAction[] actions;
+
+	/**
+	 * if the action at the same index is an ITerminalAction
+	 */
+	private final boolean[] terminal;
+
+	/**
+	 * @param actions already initialized
+	 */
+	public ActionChain(List<IAction> actions) {
+		this.actions = actions.toArray(new IAction[actions.size()]);
+		this.terminal = new boolean[this.actions.length];
+		for (int i = 0; i < this.actions.length; i++) {
+			this.terminal[i] = this.actions[i] instanceof ITerminalAction;
+		}
+	}
+
+	/**
+	 * @return number of actions
+	 */
+	public int size() {
+		return this.actions.length;
+	}
+
+	/**
+	 * call the actions in order, an exception of an action is logged and the next action is called.  Terminal
+	 * actions are skipped once the response is sent
+	 * @param request
+	 * @param response
+	 * @param csrfe why the request was rejected
+	 * @param csrfGuard
+	 * @param asyncActions true to run the ISideEffectAction actions on the AsyncActionExecutor
+	 */
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, 
+			CsrfGuard csrfGuard, boolean asyncActions) {
+		IAction[] theActions = this.actions;
+		boolean responseSent = false;
+		for (int i = 0; i < theActions.length; i++) {
+			IAction action = theActions[i];
+			try {
+				if (this.terminal[i]) {
+					/** e.g. a Forward after a Redirect would fail, check instead of catching that **/
+					if (responseSent || response.isCommitted()) {
+						responseSent = true;
+						continue;
+					}
+					action.execute(request, response, csrfe, csrfGuard);
+					responseSent = true;
+				} else if (asyncActions && action instanceof ISideEffectAction) {
+					/** read the request now, do the rest in the background **/
+					Runnable task = ((ISideEffectAction) action).prepare(request, csrfe, csrfGuard);
+					if (task != null) {
+						AsyncActionExecutor.execute(task, csrfGuard);
+					}
+				} else {
+					action.execute(request, response, csrfe, csrfGuard);
+				}
+			} catch (CsrfGuardException exception) {
+				csrfGuard.getLogger().log(LogLevel.Error, exception);
+			}
+		}
+	}
+
+	/**
+	 * call when the configuration replaced this chain, to log what its actions still hold (e.g. the 
+	 * counts of AggregateLog) instead of dropping it
+	 */
+	public void close() {
+		for (IAction action : this.actions) {
+			if (action instanceof ICloseableAction) {
+				((ICloseableAction) action).close();
+			}
+		}
+	}
+
+}
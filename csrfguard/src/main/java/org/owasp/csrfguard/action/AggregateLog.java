@@ -0,0 +1,329 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.action;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.CsrfGuardException;
+import org.owasp.csrfguard.log.LogLevel;
+import org.owasp.csrfguard.util.CsrfGuardUtils;
+import org.owasp.csrfguard.util.TokenBucket;
+
+/**
+ * Logs rejected requests like the Log action, but counts them by (error, uri, remote ip) and logs one summary
+ * line per bucket each FlushIntervalSeconds, so an attack or a broken client does not flood the logs.  At most
+ * MaxBuckets are kept per interval, further rejections are only counted.  At most LinesPerSecond summary lines
+ * (with bursts of MaxBurst) are logged, the buckets over the limit are added up into one line.  All the parameters
+ * are optional.
+ */
+public final class AggregateLog extends AbstractAction implements ICloseableAction {
+
+	private static final long serialVersionUID = -2880264934406294721L;
+
+	/**
+	 * the instances with rejections to flush.  An instance is removed once an interval of it had no rejections, 
+	 * or when its action chain is replaced, after it is flushed, so no counts are dropped with it
+	 */
+	private static final Set<AggregateLog> instances = new LinkedHashSet<AggregateLog>();
+
+	/**
+	 * checks each second which instances need to flush, started with the first rejection
+	 */
+	private static ScheduledExecutorService flushExecutor = null;
+
+	/**
+	 * the counts of one flush interval, swapped as a whole on flush so a rejection counts in one interval only
+	 */
+	private static final class Interval {
+
+		/**
+		 * counts by bucket key
+		 */
+		private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+
+		/**
+		 * number of buckets
+		 */
+		private final AtomicInteger bucketCount = new AtomicInteger();
+
+		/**
+		 * rejections which did not fit in MaxBuckets
+		 */
+		private final AtomicLong overflow = new AtomicLong();
+
+		/**
+		 * when the interval started
+		 */
+		private final long startMillis;
+
+		/**
+		 * @param startMillis
+		 */
+		private Interval(long startMillis) {
+			this.startMillis = startMillis;
+		}
+	}
+
+	/**
+	 * the current interval, null until the first rejection and after an interval without rejections
+	 */
+	private transient volatile Interval interval = null;
+
+	/**
+	 * swaps the interval without a lock, so no thread waits on a monitor (which would pin a virtual thread)
+	 * while another one logs the summary
+	 */
+	private static final AtomicReferenceFieldUpdater<AggregateLog, Interval> INTERVAL_UPDATER = 
+			AtomicReferenceFieldUpdater.newUpdater(AggregateLog.class, Interval.class, "interval");
+
+	/**
+	 * limits the summary lines, created on the first flush
+	 */
+	private transient volatile TokenBucket linesRateLimit = null;
+
+	private long flushIntervalMillis = 0;
+
+	private int maxBuckets = 0;
+
+	private int linesPerSecond = 0;
+
+	private int maxBurst = 0;
+
+	@Override
+	public void init() {
+		Map<String, String> parameters = getParameterMap();
+		this.flushIntervalMillis = 1000L * Math.max(intParameter(parameters, "FlushIntervalSeconds", 60), 1);
+		this.maxBuckets = Math.max(intParameter(parameters, "MaxBuckets", 1000), 1);
+		this.linesPerSecond = Math.max(intParameter(parameters, "LinesPerSecond", 10), 1);
+		this.maxBurst = intParameter(parameters, "MaxBurst", 100);
+	}
+
+	@Override
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
+		Interval theInterval = this.interval;
+		if (theInterval == null) {
+			theInterval = start();
+		}
+
+		String key = CsrfGuardUtils.defaultString(csrfe.getLocalizedMessage()) 
+				+ '\n' + CsrfGuardUtils.defaultString(request.getRequestURI()) 
+				+ '\n' + CsrfGuardUtils.defaultString(request.getRemoteAddr());
+
+		AtomicLong count = theInterval.buckets.get(key);
+		if (count == null) {
+			if (theInterval.bucketCount.incrementAndGet() > this.maxBuckets) {
+				theInterval.bucketCount.decrementAndGet();
+				theInterval.overflow.incrementAndGet();
+				return;
+			}
+			AtomicLong newCount = new AtomicLong();
+			count = theInterval.buckets.putIfAbsent(key, newCount);
+			if (count == null) {
+				count = newCount;
+			} else {
+				theInterval.bucketCount.decrementAndGet();
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * start an interval and register for flushing, on the first rejection
+	 * @return the current interval
+	 */
+	private Interval start() {
+		Interval theInterval = new Interval(System.currentTimeMillis());
+		while (!INTERVAL_UPDATER.compareAndSet(this, null, theInterval)) {
+			Interval current = this.interval;
+			if (current != null) {
+				return current;
+			}
+		}
+
+		/** only registers, the flushing and logging happen outside of this lock **/
+		synchronized (AggregateLog.class) {
+			instances.add(this);
+			if (flushExecutor == null) {
+				flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "CsrfGuard AggregateLog flush");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				flushExecutor.scheduleWithFixedDelay(new Runnable() {
+
+					public void run() {
+						flushAll(false);
+					}
+				}, 1, 1, TimeUnit.SECONDS);
+			}
+		}
+		return theInterval;
+	}
+
+	/**
+	 * @param parameters
+	 * @param name
+	 * @param defaultValue
+	 * @return the int parameter, or the default if not set
+	 */
+	private static int intParameter(Map<String, String> parameters, String name, int defaultValue) {
+		String value = parameters.get(name);
+		return CsrfGuardUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * @param force true to flush even if the interval has not passed
+	 */
+	private static void flushAll(boolean force) {
+		List<AggregateLog> toFlush;
+		synchronized (AggregateLog.class) {
+			toFlush = new ArrayList<AggregateLog>(instances);
+		}
+		for (AggregateLog aggregateLog : toFlush) {
+			try {
+				aggregateLog.flush(force, false);
+			} catch (RuntimeException re) {
+				//keep flushing the others, and next time
+				CsrfGuard.getInstance().getLogger().log(LogLevel.Error, re);
+			}
+		}
+	}
+
+	/**
+	 * log what is counted and stop flushing this instance, e.g. when the configuration is reloaded and
+	 * its action chain is replaced.  A later rejection (e.g. of a request still using the old chain) starts it again
+	 */
+	@Override
+	public void close() {
+		flush(true, true);
+	}
+
+	/**
+	 * log the summary lines for the interval and start a new one, or unregister if there were no rejections
+	 * @param force true to flush even if the interval has not passed
+	 * @param unregister true to unregister even if there were rejections
+	 */
+	private void flush(boolean force, boolean unregister) {
+		Interval theInterval = this.interval;
+		if (theInterval == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (!force && now - theInterval.startMillis < this.flushIntervalMillis) {
+			return;
+		}
+
+		/** counts which race with the swap may be missed, that is ok for a log summary **/
+		boolean stop = unregister || theInterval.bucketCount.get() == 0 && theInterval.overflow.get() == 0;
+		if (!INTERVAL_UPDATER.compareAndSet(this, theInterval, stop ? null : new Interval(now))) {
+			//another thread flushed this interval (e.g. close during the scheduled flush)
+			return;
+		}
+		if (stop) {
+			synchronized (AggregateLog.class) {
+				/** unless a rejection started a new interval meanwhile, which keeps it registered **/
+				if (this.interval == null) {
+					instances.remove(this);
+				}
+			}
+		}
+
+		TokenBucket theLinesRateLimit = this.linesRateLimit;
+		if (theLinesRateLimit == null) {
+			theLinesRateLimit = new TokenBucket(this.linesPerSecond, this.maxBurst);
+			this.linesRateLimit = theLinesRateLimit;
+		}
+
+		/** the summary is formatted and logged without holding a lock **/
+		long intervalSeconds = Math.max((now - theInterval.startMillis) / 1000, 1);
+		long overflowCount = theInterval.overflow.get();
+
+		long suppressedBuckets = 0;
+		long suppressedCount = 0;
+
+		for (Map.Entry<String, AtomicLong> entry : theInterval.buckets.entrySet()) {
+			long count = entry.getValue().get();
+			if (!theLinesRateLimit.tryAcquire()) {
+				suppressedBuckets++;
+				suppressedCount += count;
+				continue;
+			}
+			String[] parts = entry.getKey().split("\n", 3);
+			CsrfGuard.getInstance().getLogger().log(LogLevel.Error, String.format(
+					"potential cross-site request forgery (CSRF) attacks thwarted (count:%d in %ds, ip:%s, uri:%s, error:%s)", 
+					count, intervalSeconds, parts[2], parts[1], parts[0]));
+		}
+
+		if (suppressedBuckets > 0 || overflowCount > 0) {
+			CsrfGuard.getInstance().getLogger().log(LogLevel.Error, String.format(
+					"potential cross-site request forgery (CSRF) attacks thwarted (count:%d in %ds not logged separately, %d buckets over LinesPerSecond, %d rejections over MaxBuckets)", 
+					suppressedCount + overflowCount, intervalSeconds, suppressedBuckets, overflowCount));
+		}
+	}
+
+	/**
+	 * log what is left and stop the flush thread, e.g. when the webapp stops
+	 */
+	public static void shutdown() {
+		synchronized (AggregateLog.class) {
+			if (flushExecutor == null) {
+				return;
+			}
+			flushExecutor.shutdownNow();
+			flushExecutor = null;
+		}
+		List<AggregateLog> toFlush;
+		synchronized (AggregateLog.class) {
+			toFlush = new ArrayList<AggregateLog>(instances);
+		}
+		for (AggregateLog aggregateLog : toFlush) {
+			aggregateLog.close();
+		}
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.action;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.log.LogLevel;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
+
+/**
+ * runs the work of ISideEffectAction actions on a few background threads with a bounded queue.  When the
+ * queue is full the work runs on the request thread (CallerRuns) or is dropped and counted (Discard).
+ * The settings are read from the configuration when the first action runs
+ */
+public final class AsyncActionExecutor {
+
+	/**
+	 * seconds to wait for the queued actions when the webapp stops
+	 */
+	private static final int DRAIN_SECONDS = 5;
+
+	/**
+	 * null until the first async action, and after shutdown
+	 */
+	private static volatile ThreadPoolExecutor executor = null;
+
+	/**
+	 * once the webapp stops the actions run on the request thread
+	 */
+	private static volatile boolean shutdown = false;
+
+	private AsyncActionExecutor() {
+		/**
+		 * Intentionally blank to force static usage
+		 */
+	}
+
+	/**
+	 * run the work of an action in the background
+	 * @param task from ISideEffectAction.prepare()
+	 * @param csrfGuard
+	 */
+	public static void execute(Runnable task, CsrfGuard csrfGuard) {
+		Runnable loggingTask = new LogErrors(task, csrfGuard);
+		ThreadPoolExecutor theExecutor = executor;
+
+		if (theExecutor == null) {
+			theExecutor = start(csrfGuard);
+		}
+		if (theExecutor == null) {
+			loggingTask.run();
+		} else {
+			theExecutor.execute(loggingTask);
+		}
+	}
+
+	/**
+	 * @param csrfGuard
+	 * @return the executor, or null if it is shut down
+	 */
+	private static synchronized ThreadPoolExecutor start(CsrfGuard csrfGuard) {
+		if (executor != null || shutdown) {
+			return executor;
+		}
+		int threads = Math.max(csrfGuard.getAsyncActionsThreads(), 1);
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor theExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(Math.max(csrfGuard.getAsyncActionsQueueSize(), 1)), 
+				new ThreadFactory() {
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "CsrfGuard async actions-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, 
+				new WhenFull("Discard".equalsIgnoreCase(csrfGuard.getAsyncActionsWhenFull())));
+		theExecutor.allowCoreThreadTimeOut(true);
+		executor = theExecutor;
+		return theExecutor;
+	}
+
+	/**
+	 * run the queued actions (for a few seconds at most) and stop the threads, e.g. when the webapp stops
+	 */
+	public static void shutdown() {
+		ThreadPoolExecutor theExecutor;
+		synchronized (AsyncActionExecutor.class) {
+			shutdown = true;
+			theExecutor = executor;
+			executor = null;
+		}
+		if (theExecutor == null) {
+			return;
+		}
+		theExecutor.shutdown();
+		try {
+			if (!theExecutor.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS)) {
+				int dropped = theExecutor.shutdownNow().size();
+				CsrfGuard.getInstance().getLogger().log(LogLevel.Warning, 
+						String.format("%s async actions did not run before shutdown", dropped));
+			}
+		} catch (InterruptedException ie) {
+			theExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * what to do when the queue is full
+	 */
+	private static final class WhenFull implements RejectedExecutionHandler {
+
+		private final boolean discard;
+
+		/**
+		 * @param discard true to drop the action, false to run it on the request thread
+		 */
+		WhenFull(boolean discard) {
+			this.discard = discard;
+		}
+
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor theExecutor) {
+			if (this.discard) {
+				CsrfGuardMetrics.getInstance().asyncActionDiscarded();
+			} else {
+				task.run();
+			}
+		}
+	}
+
+	/**
+	 * log the exceptions of the action, there is no request to fail anymore
+	 */
+	private static final class LogErrors implements Runnable {
+
+		private final Runnable task;
+
+		private final CsrfGuard csrfGuard;
+
+		LogErrors(Runnable task, CsrfGuard csrfGuard) {
+			this.task = task;
+			this.csrfGuard = csrfGuard;
+		}
+
+		public void run() {
+			try {
+				this.task.run();
+			} catch (RuntimeException re) {
+				this.csrfGuard.getLogger().log(LogLevel.Error, re);
+			}
+		}
+	}
+
+}
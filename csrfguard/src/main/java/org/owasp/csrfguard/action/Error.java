@@ -36,17 +36,24 @@ import javax.servlet.http.HttpServletResponse;
 import org.owasp.csrfguard.CsrfGuard;
 import org.owasp.csrfguard.CsrfGuardException;
 
-public final class Error extends AbstractAction {
+public final class Error extends AbstractAction implements ITerminalAction {
 
 	private static final long serialVersionUID = 5479074081984904252L;
 
+	private int code = 0;
+
+	private String message = null;
+
 	@Override
-	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
-		int code = Integer.parseInt(getParameter("Code"));
-		String message = getParameter("Message");
+	public void init() {
+		this.code = Integer.parseInt(getParameter("Code").trim());
+		this.message = getParameter("Message");
+	}
 
+	@Override
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
 		try {
-			response.sendError(code, message);
+			response.sendError(this.code, this.message);
 		} catch (IOException ioe) {
 			throw new CsrfGuardException(ioe);
 		}
@@ -37,16 +37,21 @@ import javax.servlet.http.HttpServletResponse;
 import org.owasp.csrfguard.CsrfGuard;
 import org.owasp.csrfguard.CsrfGuardException;
 
-public final class Forward extends AbstractAction {
+public final class Forward extends AbstractAction implements ITerminalAction {
 
 	private static final long serialVersionUID = -3727752206497452347L;
 
+	private String errorPage = null;
+
 	@Override
-	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
-		String errorPage = getParameter("Page");
+	public void init() {
+		this.errorPage = getParameter("Page");
+	}
 
+	@Override
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
 		try {
-			request.getRequestDispatcher(errorPage).forward(request, response);
+			request.getRequestDispatcher(this.errorPage).forward(request, response);
 		} catch (IOException ioe) {
 			throw new CsrfGuardException(ioe);
 		} catch (ServletException se) {
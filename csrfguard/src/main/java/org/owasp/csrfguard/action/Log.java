@@ -34,52 +34,39 @@ import javax.servlet.http.HttpServletResponse;
 import org.owasp.csrfguard.CsrfGuard;
 import org.owasp.csrfguard.CsrfGuardException;
 import org.owasp.csrfguard.log.LogLevel;
-import org.owasp.csrfguard.util.CsrfGuardUtils;
 
-public final class Log extends AbstractAction {
+public final class Log extends AbstractAction implements ISideEffectAction {
 
 	private static final long serialVersionUID = 8238761463376338707L;
 
-	@Override
-	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
-		String logMessage = getParameter("Message");
-
-		/** Exception Information **/
-		logMessage = logMessage.replace("%exception%", String.valueOf(csrfe));
-		logMessage = logMessage.replace("%exception_message%", csrfe.getLocalizedMessage());
+	/**
+	 * the Message parameter parsed
+	 */
+	private LogMessageTemplate template = null;
 
-		/** Remote Network Information **/
-		logMessage = logMessage.replace("%remote_ip%", CsrfGuardUtils.defaultString(request.getRemoteAddr()));
-		logMessage = logMessage.replace("%remote_host%", CsrfGuardUtils.defaultString(request.getRemoteHost()));
-		logMessage = logMessage.replace("%remote_port%", String.valueOf(request.getRemotePort()));
+	@Override
+	public void init() {
+		this.template = new LogMessageTemplate(getParameter("Message"));
+	}
 
-		/** Local Network Information **/
-		logMessage = logMessage.replace("%local_ip%", CsrfGuardUtils.defaultString(request.getLocalAddr()));
-		logMessage = logMessage.replace("%local_host%", CsrfGuardUtils.defaultString(request.getLocalName()));
-		logMessage = logMessage.replace("%local_port%", String.valueOf(request.getLocalPort()));
+	@Override
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
+		prepare(request, csrfe, csrfGuard).run();
+	}
 
-		/** Requested Resource Information **/
-		logMessage = logMessage.replace("%request_method%", CsrfGuardUtils.defaultString(request.getMethod()));
-		logMessage = logMessage.replace("%request_uri%", CsrfGuardUtils.defaultString(request.getRequestURI()));
-		logMessage = logMessage.replace("%request_url%", request.getRequestURL().toString());
+	/**
+	 * render the message on the request thread, log it later
+	 * @see org.owasp.csrfguard.action.ISideEffectAction#prepare(javax.servlet.http.HttpServletRequest, org.owasp.csrfguard.CsrfGuardException, org.owasp.csrfguard.CsrfGuard)
+	 */
+	@Override
+	public Runnable prepare(HttpServletRequest request, CsrfGuardException csrfe, final CsrfGuard csrfGuard) throws CsrfGuardException {
+		final String logMessage = this.template.render(request, csrfe);
+		return new Runnable() {
 
-		// JavaEE Principal Information
-		String user = request.getRemoteUser();
-		if (user == null || "".equals(user.trim())) {
-	        user = (String)request.getAttribute("REMOTE_USER");
-		}
-		if (user == null || "".equals(user.trim())) {
-			if (request.getUserPrincipal() != null) {
-				user = request.getUserPrincipal().getName();
+			public void run() {
+				csrfGuard.getLogger().log(LogLevel.Error, logMessage);
 			}
-		}
-		if (user != null && !"".equals(user.trim())) {
-			logMessage = logMessage.replace("%user%", user);
-		} else {
-			logMessage = logMessage.replace("%user%", "<anonymous>");
-		}
-
-		csrfGuard.getLogger().log(LogLevel.Error, logMessage);
+		};
 	}
 	
 }
@@ -0,0 +1,233 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.owasp.csrfguard.CsrfGuardException;
+import org.owasp.csrfguard.util.CsrfGuardUtils;
+
+/**
+ * the Log action message parsed once into literal text and placeholders, so rendering only evaluates
+ * the placeholders in the message (e.g. no reverse dns lookup unless %remote_host% is used).  Immutable
+ */
+final class LogMessageTemplate implements Serializable {
+
+	private static final long serialVersionUID = -4139265786374412203L;
+
+	/**
+	 * the placeholders the Log message can use
+	 */
+	enum Placeholder {
+
+		/** Exception Information **/
+		exception {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return String.valueOf(csrfe);
+			}
+		},
+		exception_message {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return csrfe.getLocalizedMessage();
+			}
+		},
+
+		/** Remote Network Information **/
+		remote_ip {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return CsrfGuardUtils.defaultString(request.getRemoteAddr());
+			}
+		},
+		remote_host {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return CsrfGuardUtils.defaultString(request.getRemoteHost());
+			}
+		},
+		remote_port {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return String.valueOf(request.getRemotePort());
+			}
+		},
+
+		/** Local Network Information **/
+		local_ip {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return CsrfGuardUtils.defaultString(request.getLocalAddr());
+			}
+		},
+		local_host {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return CsrfGuardUtils.defaultString(request.getLocalName());
+			}
+		},
+		local_port {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return String.valueOf(request.getLocalPort());
+			}
+		},
+
+		/** Requested Resource Information **/
+		request_method {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return CsrfGuardUtils.defaultString(request.getMethod());
+			}
+		},
+		request_uri {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return CsrfGuardUtils.defaultString(request.getRequestURI());
+			}
+		},
+		request_url {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				return request.getRequestURL().toString();
+			}
+		},
+
+		// JavaEE Principal Information
+		user {
+			@Override
+			String value(HttpServletRequest request, CsrfGuardException csrfe) {
+				String user = request.getRemoteUser();
+				if (user == null || "".equals(user.trim())) {
+					user = (String)request.getAttribute("REMOTE_USER");
+				}
+				if (user == null || "".equals(user.trim())) {
+					if (request.getUserPrincipal() != null) {
+						user = request.getUserPrincipal().getName();
+					}
+				}
+				if (user != null && !"".equals(user.trim())) {
+					return user;
+				}
+				return "<anonymous>";
+			}
+		};
+
+		/**
+		 * @param request
+		 * @param csrfe
+		 * @return the text to put in place of the placeholder
+		 */
+		abstract String value(HttpServletRequest request, CsrfGuardException csrfe);
+
+		/**
+		 * @param name between the percent signs
+		 * @return the placeholder or null if it is not one
+		 */
+		static Placeholder forName(String name) {
+			for (Placeholder placeholder : values()) {
+				if (placeholder.name().equals(name)) {
+					return placeholder;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * text before each placeholder, and after the last one, so one more than the placeholders
+	 */
+	private final String[] literals;
+
+	private final Placeholder[] placeholders;
+
+	/**
+	 * length of the literal text, plus a guess for the placeholders, to size the builder
+	 */
+	private final int estimatedLength;
+
+	/**
+	 * @param message with %placeholder% in it, text between percent signs which is not a placeholder is kept as is
+	 */
+	LogMessageTemplate(String message) {
+		List<String> theLiterals = new ArrayList<String>();
+		List<Placeholder> thePlaceholders = new ArrayList<Placeholder>();
+		int literalStart = 0;
+		int index = 0;
+		int start;
+
+		while ((start = message.indexOf('%', index)) >= 0) {
+			int end = message.indexOf('%', start + 1);
+			if (end < 0) {
+				break;
+			}
+			Placeholder placeholder = Placeholder.forName(message.substring(start + 1, end));
+			if (placeholder == null) {
+				/** the closing percent might open a placeholder **/
+				index = end;
+				continue;
+			}
+			theLiterals.add(message.substring(literalStart, start));
+			thePlaceholders.add(placeholder);
+			index = literalStart = end + 1;
+		}
+		theLiterals.add(message.substring(literalStart));
+
+		this.literals = theLiterals.toArray(new String[theLiterals.size()]);
+		this.placeholders = thePlaceholders.toArray(new Placeholder[thePlaceholders.size()]);
+
+		int length = 0;
+		for (String literal : this.literals) {
+			length += literal.length();
+		}
+		this.estimatedLength = length + (32 * this.placeholders.length);
+	}
+
+	/**
+	 * @param request
+	 * @param csrfe
+	 * @return the message with the placeholders filled in
+	 */
+	String render(HttpServletRequest request, CsrfGuardException csrfe) {
+		if (this.placeholders.length == 0) {
+			return this.literals[0];
+		}
+		StringBuilder result = new StringBuilder(this.estimatedLength);
+		for (int i = 0; i < this.placeholders.length; i++) {
+			result.append(this.literals[i]).append(this.placeholders[i].value(request, csrfe));
+		}
+		return result.append(this.literals[this.placeholders.length]).toString();
+	}
+
+}
@@ -36,16 +36,21 @@ import javax.servlet.http.HttpServletResponse;
 import org.owasp.csrfguard.CsrfGuard;
 import org.owasp.csrfguard.CsrfGuardException;
 
-public final class Redirect extends AbstractAction {
+public final class Redirect extends AbstractAction implements ITerminalAction {
 
 	private static final long serialVersionUID = -2265693822259717332L;
 
+	private String errorPage = null;
+
 	@Override
-	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
-		String errorPage = getParameter("Page");
+	public void init() {
+		this.errorPage = getParameter("Page");
+	}
 
+	@Override
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
 		try {
-			response.sendRedirect(errorPage);
+			response.sendRedirect(this.errorPage);
 		} catch (IOException ioe) {
 			throw new CsrfGuardException(ioe);
 		}
@@ -0,0 +1,100 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.action;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.CsrfGuardException;
+
+/**
+ * Rejects the request with a small fixed response written straight to the output stream, instead of the error
+ * page of the container (Error) or a redirect.  The response is built once when the configuration is loaded from
+ * the optional parameters Code (default 403), ContentType (default text/plain;charset=UTF-8) and Body (default
+ * Forbidden, encoded as UTF-8)
+ */
+public final class Reject extends AbstractAction implements ITerminalAction {
+
+	private static final long serialVersionUID = 2385626379403564195L;
+
+	private int code = HttpServletResponse.SC_FORBIDDEN;
+
+	private String contentType = null;
+
+	private byte[] body = null;
+
+	@Override
+	public void init() {
+		String theCode = getParameterMap().get("Code");
+		if (theCode != null) {
+			this.code = Integer.parseInt(theCode.trim());
+		}
+		String theContentType = getParameterMap().get("ContentType");
+		this.contentType = theContentType == null ? "text/plain;charset=UTF-8" : theContentType;
+		String theBody = getParameterMap().get("Body");
+		try {
+			this.body = (theBody == null ? "Forbidden" : theBody).getBytes("UTF-8");
+		} catch (UnsupportedEncodingException uee) {
+			throw new RuntimeException(uee);
+		}
+	}
+
+	@Override
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
+		try {
+			/** drop anything buffered so far, only the reject body is sent **/
+			response.resetBuffer();
+			response.setStatus(this.code);
+			response.setContentType(this.contentType);
+			response.setContentLength(this.body.length);
+			response.setHeader("Cache-Control", "no-store");
+
+			ServletOutputStream out = response.getOutputStream();
+			out.write(this.body);
+			out.flush();
+		} catch (IllegalStateException ise) {
+			/** the writer was already used (or the response committed), send the status without the body **/
+			try {
+				response.sendError(this.code);
+			} catch (IllegalStateException committed) {
+				throw new CsrfGuardException(committed);
+			} catch (IOException ioe) {
+				throw new CsrfGuardException(ioe);
+			}
+		} catch (IOException ioe) {
+			throw new CsrfGuardException(ioe);
+		}
+	}
+
+}
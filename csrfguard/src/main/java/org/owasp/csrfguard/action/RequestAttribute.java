@@ -38,11 +38,16 @@ public final class RequestAttribute extends AbstractAction {
 
 	private static final long serialVersionUID = 6714855990116387348L;
 
+	private String attributeName = null;
+
 	@Override
-	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
-		String attributeName = getParameter("AttributeName");
+	public void init() {
+		this.attributeName = getParameter("AttributeName");
+	}
 
-		request.setAttribute(attributeName, csrfe);
+	@Override
+	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
+		request.setAttribute(this.attributeName, csrfe);
 	}
 	
 }
@@ -28,16 +28,13 @@
  */
 package org.owasp.csrfguard.action;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.owasp.csrfguard.CsrfGuard;
 import org.owasp.csrfguard.CsrfGuardException;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
 import org.owasp.csrfguard.util.RandomGenerator;
 
 public class Rotate extends AbstractAction {
@@ -49,6 +46,7 @@ public class Rotate extends AbstractAction {
 		HttpSession session = request.getSession(false);
 
 		if (session != null) {
+			CsrfGuardMetrics.getInstance().rotated();
 			updateSessionToken(session, csrfGuard);
 
 			if (csrfGuard.isTokenPerPageEnabled()) {
@@ -71,24 +69,11 @@ public class Rotate extends AbstractAction {
 	}
 
 	private void updatePageTokens(HttpSession session, CsrfGuard csrfGuard) throws CsrfGuardException {
-		@SuppressWarnings("unchecked")
-		Map<String, String> pageTokens = (Map<String, String>) session.getAttribute(CsrfGuard.PAGE_TOKENS_KEY);
-		List<String> pages = new ArrayList<String>();
-
-		if(pageTokens != null) {
-			pages.addAll(pageTokens.keySet());
-		}
-
-		for (String page : pages) {
-			String token = null;
-
-			try {
-				token = RandomGenerator.generateRandomId(csrfGuard.getPrng(), csrfGuard.getTokenLength());
-			} catch (Exception e) {
-				throw new CsrfGuardException(String.format("unable to generate the random token - %s", e.getLocalizedMessage()), e);
-			}
-			
-			pageTokens.put(page, token);
+		/** page tokens are regenerated lazily when next used **/
+		try {
+			csrfGuard.rotatePageTokens(session);
+		} catch (Exception e) {
+			throw new CsrfGuardException(String.format("unable to generate the random token - %s", e.getLocalizedMessage()), e);
 		}
 	}
 	
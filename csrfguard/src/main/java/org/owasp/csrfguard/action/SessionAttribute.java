@@ -36,13 +36,19 @@ public final class SessionAttribute extends AbstractAction {
 
 	private static final long serialVersionUID = 1367492926060283228L;
 
+	private String attributeName = null;
+
+	@Override
+	public void init() {
+		this.attributeName = getParameter("AttributeName");
+	}
+
 	@Override
 	public void execute(HttpServletRequest request, HttpServletResponse response, CsrfGuardException csrfe, CsrfGuard csrfGuard) throws CsrfGuardException {
-		String attributeName = getParameter("AttributeName");
 		HttpSession session = request.getSession(false);
 
 		if (session != null) {
-			session.setAttribute(attributeName, csrfe);
+			session.setAttribute(this.attributeName, csrfe);
 		}
 	}
 	
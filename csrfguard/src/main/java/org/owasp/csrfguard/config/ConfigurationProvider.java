@@ -33,8 +33,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.owasp.csrfguard.action.ActionChain;
 import org.owasp.csrfguard.action.IAction;
 import org.owasp.csrfguard.log.ILogger;
+import org.owasp.csrfguard.throttle.FailureThrottle;
 
 public interface ConfigurationProvider {
 
@@ -43,6 +45,51 @@ public interface ConfigurationProvider {
 	
 	boolean isPrintConfig();
 	
+	/**
+	 * class of the IMetricsExporter to push the metrics to, read at startup
+	 * @return the class name or null if the metrics are only in JMX
+	 */
+	String getMetricsExporter();
+	
+	/**
+	 * @return seconds between metrics exports
+	 */
+	int getMetricsExportIntervalSeconds();
+	
+	/**
+	 * class of the ITracer to trace the stages of the requests with, read at startup
+	 * @return the class name or null if tracing is off
+	 */
+	String getTracer();
+	
+	/**
+	 * if the ISideEffectAction actions run on a background thread instead of the request thread
+	 * @return true to run them async
+	 */
+	boolean isAsyncActions();
+	
+	/**
+	 * @return threads which run the async actions
+	 */
+	int getAsyncActionsThreads();
+	
+	/**
+	 * @return max async actions waiting to run
+	 */
+	int getAsyncActionsQueueSize();
+	
+	/**
+	 * what to do with an async action when the queue is full
+	 * @return CallerRuns to run it on the request thread, or Discard to drop it
+	 */
+	String getAsyncActionsWhenFull();
+	
+	/**
+	 * counts the rejected requests of each client and blocks the clients with too many
+	 * @return the throttle or null if org.owasp.csrfguard.Throttle is off
+	 */
+	FailureThrottle getFailureThrottle();
+	
 	ILogger getLogger();
 
 	String getTokenName();
@@ -96,6 +143,11 @@ public interface ConfigurationProvider {
 	
 	List<IAction> getActions();
 	
+	/**
+	 * @return the actions as a chain to call when a request is rejected
+	 */
+	ActionChain getActionChain();
+	
 	String getJavascriptSourceFile();
 
 	boolean isJavascriptDomainStrict();
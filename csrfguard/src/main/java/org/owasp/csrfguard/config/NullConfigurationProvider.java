@@ -34,9 +34,11 @@ import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.owasp.csrfguard.action.ActionChain;
 import org.owasp.csrfguard.action.IAction;
 import org.owasp.csrfguard.log.ConsoleLogger;
 import org.owasp.csrfguard.log.ILogger;
+import org.owasp.csrfguard.throttle.FailureThrottle;
 
 /**
  * ConfigurationProvider which returns all null or empty values (except for the logger).
@@ -129,6 +131,14 @@ public final class NullConfigurationProvider implements ConfigurationProvider {
 		return Collections.emptyList();
 	}
 
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getActionChain()
+	 */
+	@Override
+	public ActionChain getActionChain() {
+		return ActionChain.EMPTY;
+	}
+
 	/**
 	 * @see org.owasp.csrfguard.config.ConfigurationProvider#isPrintConfig()
 	 */
@@ -137,6 +147,70 @@ public final class NullConfigurationProvider implements ConfigurationProvider {
 		return false;
 	}
 
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getMetricsExporter()
+	 */
+	@Override
+	public String getMetricsExporter() {
+		return null;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getMetricsExportIntervalSeconds()
+	 */
+	@Override
+	public int getMetricsExportIntervalSeconds() {
+		return 60;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getTracer()
+	 */
+	@Override
+	public String getTracer() {
+		return null;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#isAsyncActions()
+	 */
+	@Override
+	public boolean isAsyncActions() {
+		return false;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getAsyncActionsThreads()
+	 */
+	@Override
+	public int getAsyncActionsThreads() {
+		return 1;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getAsyncActionsQueueSize()
+	 */
+	@Override
+	public int getAsyncActionsQueueSize() {
+		return 1000;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getAsyncActionsWhenFull()
+	 */
+	@Override
+	public String getAsyncActionsWhenFull() {
+		return "CallerRuns";
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getFailureThrottle()
+	 */
+	@Override
+	public FailureThrottle getFailureThrottle() {
+		return null;
+	}
+
 	/**
 	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getJavascriptSourceFile()
 	 */
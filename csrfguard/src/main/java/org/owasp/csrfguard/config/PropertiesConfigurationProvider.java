@@ -35,18 +35,25 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletConfig;
 
 import org.owasp.csrfguard.CsrfGuardServletContextListener;
+import org.owasp.csrfguard.action.ActionChain;
 import org.owasp.csrfguard.action.IAction;
+import org.owasp.csrfguard.action.IInitializableAction;
 import org.owasp.csrfguard.config.overlay.ConfigurationOverlayProvider;
 import org.owasp.csrfguard.log.ILogger;
+import org.owasp.csrfguard.throttle.FailureThrottle;
 import org.owasp.csrfguard.servlet.JavaScriptServlet;
 import org.owasp.csrfguard.util.CsrfGuardUtils;
+import org.owasp.csrfguard.util.PrngSeeder;
 
 /**
  * ConfifgurationProvider based on a java.util.Properties object.
@@ -60,6 +67,10 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 	
 	private final static String UNPROTECTED_PAGE_PREFIX = "org.owasp.csrfguard.unprotected.";
 
+	private final static String JAVASCRIPT_PREFIX = "org.owasp.csrfguard.JavascriptServlet.";
+	
+	private final static String THROTTLE_PREFIX = "org.owasp.csrfguard.Throttle";
+
 	private final ILogger logger;
 
 	private final String tokenName;
@@ -76,6 +87,22 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 
 	private final boolean printConfig;
 	
+	private final String metricsExporter;
+	
+	private final int metricsExportIntervalSeconds;
+	
+	private final String tracer;
+	
+	private final boolean asyncActions;
+	
+	private final int asyncActionsThreads;
+	
+	private final int asyncActionsQueueSize;
+	
+	private final String asyncActionsWhenFull;
+	
+	private final FailureThrottle failureThrottle;
+	
 	private final SecureRandom prng;
 
 	private final String newTokenLandingPage;
@@ -98,18 +125,40 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 
 	private final List<IAction> actions;
 	
+	private final ActionChain actionChain;
+	
 	private Properties propertiesCache;
 	
+	/**
+	 * the properties sorted by name, so each namespace (actions, pages, ...) is a sub map
+	 */
+	private final NavigableMap<String, String> propertiesIndex;
+	
 	public PropertiesConfigurationProvider(Properties properties) {
+		this(properties, null);
+	}
+	
+	/**
+	 * build a provider, reusing the parts of a previous provider (e.g. before the config overlay changed)
+	 * whose properties did not change: the logger, the PRNG, the actions, the protected and unprotected 
+	 * pages and the javascript settings and template
+	 * @param properties
+	 * @param previous provider to reuse unchanged parts of, or null
+	 */
+	public PropertiesConfigurationProvider(Properties properties, PropertiesConfigurationProvider previous) {
 		try {
 			this.propertiesCache = properties;
-			actions = new ArrayList<IAction>();
-			protectedPages = new HashSet<String>();
-			unprotectedPages = new HashSet<String>();
+			Properties previousProperties = previous == null ? null : previous.propertiesCache;
+			this.propertiesIndex = propertiesIndex(properties);
+			NavigableMap<String, String> previousPropertiesIndex = previous == null ? null : previous.propertiesIndex;
 			protectedMethods = new HashSet<String>();
 			unprotectedMethods = new HashSet<String>();
 			/** load simple properties **/
-			logger = (ILogger) Class.forName(propertyString(properties, "org.owasp.csrfguard.Logger", "org.owasp.csrfguard.log.ConsoleLogger")).newInstance();
+			if (samePropertyValue(previousProperties, properties, "org.owasp.csrfguard.Logger")) {
+				logger = previous.logger;
+			} else {
+				logger = (ILogger) Class.forName(propertyString(properties, "org.owasp.csrfguard.Logger", "org.owasp.csrfguard.log.ConsoleLogger")).newInstance();
+			}
 			tokenName = propertyString(properties, "org.owasp.csrfguard.TokenName", "OWASP_CSRFGUARD");
 			tokenLength = Integer.parseInt(propertyString(properties, "org.owasp.csrfguard.TokenLength", "32"));
 			rotate = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.Rotate", "false"));
@@ -118,10 +167,40 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 			this.validationWhenNoSessionExists = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.ValidateWhenNoSessionExists", "true"));
 			
 			tokenPerPagePrecreate = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.TokenPerPagePrecreate", "false"));
-			prng = SecureRandom.getInstance(propertyString(properties, "org.owasp.csrfguard.PRNG", "SHA1PRNG"), propertyString(properties, "org.owasp.csrfguard.PRNG.Provider", "SUN"));
+			if (samePropertyValue(previousProperties, properties, "org.owasp.csrfguard.PRNG")
+					&& samePropertyValue(previousProperties, properties, "org.owasp.csrfguard.PRNG.Provider")
+					&& samePropertyValue(previousProperties, properties, "org.owasp.csrfguard.PRNG.NonBlockingSeed")) {
+				//already seeded
+				prng = previous.prng;
+			} else {
+				prng = PrngSeeder.newSeededPrng(propertyString(properties, "org.owasp.csrfguard.PRNG", "SHA1PRNG"), 
+						propertyString(properties, "org.owasp.csrfguard.PRNG.Provider", "SUN"),
+						Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.PRNG.NonBlockingSeed", "true")));
+			}
 			newTokenLandingPage = propertyString(properties, "org.owasp.csrfguard.NewTokenLandingPage");
 	
 			printConfig = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.Config.Print", "false"));
+			
+			this.metricsExporter = propertyString(properties, "org.owasp.csrfguard.Metrics.Exporter");
+			this.metricsExportIntervalSeconds = Integer.parseInt(propertyString(properties, "org.owasp.csrfguard.Metrics.ExportIntervalSeconds", "60"));
+			this.tracer = propertyString(properties, "org.owasp.csrfguard.Tracer");
+			this.asyncActions = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.AsyncActions", "false"));
+			this.asyncActionsThreads = Integer.parseInt(propertyString(properties, "org.owasp.csrfguard.AsyncActions.Threads", "1"));
+			this.asyncActionsQueueSize = Integer.parseInt(propertyString(properties, "org.owasp.csrfguard.AsyncActions.QueueSize", "1000"));
+			this.asyncActionsWhenFull = propertyString(properties, "org.owasp.csrfguard.AsyncActions.WhenFull", "CallerRuns");
+			
+			/** keep the counts and the blocked clients if the throttle settings did not change **/
+			if (samePropertiesWithPrefix(previousPropertiesIndex, this.propertiesIndex, THROTTLE_PREFIX)) {
+				this.failureThrottle = previous.failureThrottle;
+			} else if (Boolean.valueOf(propertyString(properties, THROTTLE_PREFIX, "false"))) {
+				this.failureThrottle = new FailureThrottle(
+						Integer.parseInt(propertyString(properties, "org.owasp.csrfguard.Throttle.MaxFailures", "20")), 
+						Integer.parseInt(propertyString(properties, "org.owasp.csrfguard.Throttle.WindowSeconds", "60")), 
+						Integer.parseInt(propertyString(properties, "org.owasp.csrfguard.Throttle.BlockSeconds", "300")), 
+						FailureThrottle.Key.valueOf(propertyString(properties, "org.owasp.csrfguard.Throttle.Key", "RemoteAddr").trim()));
+			} else {
+				this.failureThrottle = null;
+			}
 
 			this.enabled = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.Enabled", "true"));
 			
@@ -135,88 +214,33 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 			ajax = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.Ajax", "false"));
 			protect = Boolean.valueOf(propertyString(properties, "org.owasp.csrfguard.Protect", "false"));
 	
-			/** first pass: instantiate actions **/
-			Map<String, IAction> actionsMap = new HashMap<String, IAction>();
-	
-			for (Object obj : properties.keySet()) {
-				String key = (String) obj;
-	
-				if (key.startsWith(ACTION_PREFIX)) {
-					String directive = key.substring(ACTION_PREFIX.length());
-					int index = directive.indexOf('.');
-	
-					/** action name/class **/
-					if (index < 0) {
-						String actionClass = propertyString(properties, key);
-						IAction action = (IAction) Class.forName(actionClass).newInstance();
-	
-						action.setName(directive);
-						actionsMap.put(action.getName(), action);
-						actions.add(action);
-					}
-				}
+			if (samePropertiesWithPrefix(previousPropertiesIndex, this.propertiesIndex, ACTION_PREFIX)) {
+				actions = previous.actions;
+				actionChain = previous.actionChain;
+			} else {
+				actions = actions(this.propertiesIndex);
+				actionChain = new ActionChain(actions);
 			}
 	
-			/** second pass: initialize action parameters **/
-			for (Object obj : properties.keySet()) {
-				String key = (String) obj;
-	
-				if (key.startsWith(ACTION_PREFIX)) {
-					String directive = key.substring(ACTION_PREFIX.length());
-					int index = directive.indexOf('.');
-	
-					/** action name/class **/
-					if (index >= 0) {
-						String actionName = directive.substring(0, index);
-						IAction action = actionsMap.get(actionName);
-	
-						if (action == null) {
-							throw new IOException(String.format("action class %s has not yet been specified", actionName));
-						}
-	
-						String parameterName = directive.substring(index + 1);
-						String parameterValue = propertyString(properties, key);
-	
-						action.setParameter(parameterName, parameterValue);
-					}
-				}
+			/** initialize protected, unprotected pages **/
+			if (samePropertiesWithPrefix(previousPropertiesIndex, this.propertiesIndex, PROTECTED_PAGE_PREFIX)) {
+				protectedPages = previous.protectedPages;
+			} else {
+				protectedPages = pages(this.propertiesIndex, PROTECTED_PAGE_PREFIX);
 			}
-	
-			/** ensure at least one action was defined **/
-			if (actions.size() <= 0) {
-				throw new IOException("failure to define at least one action");
+			if (samePropertiesWithPrefix(previousPropertiesIndex, this.propertiesIndex, UNPROTECTED_PAGE_PREFIX)) {
+				unprotectedPages = previous.unprotectedPages;
+			} else {
+				unprotectedPages = pages(this.propertiesIndex, UNPROTECTED_PAGE_PREFIX);
 			}
 	
-			/** initialize protected, unprotected pages **/
-			for (Object obj : properties.keySet()) {
-				String key = (String) obj;
-				
-				if (key.startsWith(PROTECTED_PAGE_PREFIX)) {
-					String directive = key.substring(PROTECTED_PAGE_PREFIX.length());
-					int index = directive.indexOf('.');
-	
-					/** page name/class **/
-					if (index < 0) {
-						String pageUri = propertyString(properties, key);
-						
-						protectedPages.add(pageUri);
-					}
-				}
-	
-				if (key.startsWith(UNPROTECTED_PAGE_PREFIX)) {
-					String directive = key.substring(UNPROTECTED_PAGE_PREFIX.length());
-					int index = directive.indexOf('.');
-	
-					/** page name/class **/
-					if (index < 0) {
-						String pageUri = propertyString(properties, key);
-						
-						unprotectedPages.add(pageUri);
-					}
-				}
+			/** javascript settings and template (e.g. read from a file) **/
+			if (previous != null && previous.javascriptParamsInitted 
+					&& samePropertiesWithPrefix(previousPropertiesIndex, this.propertiesIndex, JAVASCRIPT_PREFIX)) {
+				this.copyJavascriptParams(previous);
 			}
 	
-			/** initialize protected methods **/
+	/** initialize protected methods **/
 			String methodList = propertyString(properties, "org.owasp.csrfguard.ProtectedMethods");
 			if (methodList != null && methodList.trim().length() != 0) {
 				for (String method : methodList.split(",")) {
@@ -235,6 +259,153 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 		}
 	}
 	
+	/**
+	 * index the properties by name in one pass, so a namespace (e.g. all actions) is a sub map
+	 * @param properties
+	 * @return the sorted properties
+	 */
+	private static NavigableMap<String, String> propertiesIndex(Properties properties) {
+		NavigableMap<String, String> propertiesIndex = new TreeMap<String, String>();
+		for (String key : properties.stringPropertyNames()) {
+			propertiesIndex.put(key, properties.getProperty(key));
+		}
+		return propertiesIndex;
+	}
+	
+	/**
+	 * @param propertiesIndex
+	 * @param prefix
+	 * @return the properties whose name starts with the prefix, in name order
+	 */
+	private static SortedMap<String, String> propertiesWithPrefix(NavigableMap<String, String> propertiesIndex, String prefix) {
+		return propertiesIndex.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+	
+	/**
+	 * instantiate the actions and set their parameters
+	 * @param propertiesIndex
+	 * @return the actions
+	 * @throws Exception
+	 */
+	private static List<IAction> actions(NavigableMap<String, String> propertiesIndex) throws Exception {
+		List<IAction> actions = new ArrayList<IAction>();
+		
+		Map<String, IAction> actionsMap = new HashMap<String, IAction>();
+
+		/** the keys are sorted, so an action class comes before its parameters (its name is a prefix of theirs) **/
+		for (Map.Entry<String, String> entry : propertiesWithPrefix(propertiesIndex, ACTION_PREFIX).entrySet()) {
+			String directive = entry.getKey().substring(ACTION_PREFIX.length());
+			int index = directive.indexOf('.');
+
+			/** action name/class **/
+			if (index < 0) {
+				String actionClass = commonSubstitutions(entry.getValue());
+				IAction action = (IAction) Class.forName(actionClass).newInstance();
+
+				action.setName(directive);
+				actionsMap.put(action.getName(), action);
+				actions.add(action);
+			} else {
+				/** action parameter **/
+				String actionName = directive.substring(0, index);
+				IAction action = actionsMap.get(actionName);
+
+				if (action == null) {
+					throw new IOException(String.format("action class %s has not yet been specified", actionName));
+				}
+
+				String parameterName = directive.substring(index + 1);
+				String parameterValue = commonSubstitutions(entry.getValue());
+
+				action.setParameter(parameterName, parameterValue);
+			}
+		}
+
+		/** ensure at least one action was defined **/
+		if (actions.size() <= 0) {
+			throw new IOException("failure to define at least one action");
+		}
+		
+		/** all the parameters are set, check them now instead of on the first attack **/
+		for (IAction action : actions) {
+			if (action instanceof IInitializableAction) {
+				((IInitializableAction) action).init();
+			}
+		}
+		
+		return actions;
+	}
+	
+	/**
+	 * @param propertiesIndex
+	 * @param prefix protected or unprotected page prefix
+	 * @return the page uris
+	 */
+	private static Set<String> pages(NavigableMap<String, String> propertiesIndex, String prefix) {
+		Set<String> pages = new HashSet<String>();
+		
+		for (Map.Entry<String, String> entry : propertiesWithPrefix(propertiesIndex, prefix).entrySet()) {
+			String directive = entry.getKey().substring(prefix.length());
+			int index = directive.indexOf('.');
+
+			/** page name/class **/
+			if (index < 0) {
+				String pageUri = commonSubstitutions(entry.getValue());
+				
+				pages.add(pageUri);
+			}
+		}
+		return pages;
+	}
+	
+	/**
+	 * @param previousProperties null if there is no previous provider
+	 * @param properties
+	 * @param propertyName
+	 * @return true if there are previous properties and the property has the same value
+	 */
+	private static boolean samePropertyValue(Properties previousProperties, Properties properties, String propertyName) {
+		if (previousProperties == null) {
+			return false;
+		}
+		String previousValue = previousProperties.getProperty(propertyName);
+		String value = properties.getProperty(propertyName);
+		return previousValue == null ? value == null : previousValue.equals(value);
+	}
+	
+	/**
+	 * @param previousPropertiesIndex null if there is no previous provider
+	 * @param propertiesIndex
+	 * @param prefix
+	 * @return true if there is a previous provider and all the properties starting with the prefix are the same
+	 */
+	private static boolean samePropertiesWithPrefix(NavigableMap<String, String> previousPropertiesIndex, 
+			NavigableMap<String, String> propertiesIndex, String prefix) {
+		if (previousPropertiesIndex == null) {
+			return false;
+		}
+		return propertiesWithPrefix(previousPropertiesIndex, prefix).equals(propertiesWithPrefix(propertiesIndex, prefix));
+	}
+	
+	/**
+	 * take the javascript settings and template from a provider whose javascript properties are the same
+	 * @param previous
+	 */
+	private void copyJavascriptParams(PropertiesConfigurationProvider previous) {
+		this.javascriptCacheControl = previous.javascriptCacheControl;
+		this.javascriptDomainStrict = previous.javascriptDomainStrict;
+		this.javascriptInjectIntoAttributes = previous.javascriptInjectIntoAttributes;
+		this.javascriptInjectGetForms = previous.javascriptInjectGetForms;
+		this.javascriptInjectFormAttributes = previous.javascriptInjectFormAttributes;
+		this.javascriptInjectIntoForms = previous.javascriptInjectIntoForms;
+		this.javascriptRefererPattern = previous.javascriptRefererPattern;
+		this.javascriptRefererMatchDomain = previous.javascriptRefererMatchDomain;
+		this.javascriptSourceFile = previous.javascriptSourceFile;
+		this.javascriptXrequestedWith = previous.javascriptXrequestedWith;
+		this.javascriptTemplateCode = previous.javascriptTemplateCode;
+		this.javascriptParamsInitted = true;
+	}
+	
 	private boolean javascriptParamsInitted = false;
 	
 	private void javascriptInitParamsIfNeeded() {
@@ -397,6 +568,13 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 		return actions;
 	}
 
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getActionChain()
+	 */
+	public ActionChain getActionChain() {
+		return actionChain;
+	}
+
 	/**
 	 * @see org.owasp.csrfguard.config.ConfigurationProvider#isPrintConfig()
 	 */
@@ -404,6 +582,62 @@ public final class PropertiesConfigurationProvider implements ConfigurationProvi
 		return this.printConfig;
 	}
 
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getMetricsExporter()
+	 */
+	public String getMetricsExporter() {
+		return this.metricsExporter;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getMetricsExportIntervalSeconds()
+	 */
+	public int getMetricsExportIntervalSeconds() {
+		return this.metricsExportIntervalSeconds;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getTracer()
+	 */
+	public String getTracer() {
+		return this.tracer;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#isAsyncActions()
+	 */
+	public boolean isAsyncActions() {
+		return this.asyncActions;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getAsyncActionsThreads()
+	 */
+	public int getAsyncActionsThreads() {
+		return this.asyncActionsThreads;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getAsyncActionsQueueSize()
+	 */
+	public int getAsyncActionsQueueSize() {
+		return this.asyncActionsQueueSize;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getAsyncActionsWhenFull()
+	 */
+	public String getAsyncActionsWhenFull() {
+		return this.asyncActionsWhenFull;
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.config.ConfigurationProvider#getFailureThrottle()
+	 */
+	public FailureThrottle getFailureThrottle() {
+		return this.failureThrottle;
+	}
+
 	private String javascriptTemplateCode;
 
 	private String javascriptSourceFile;
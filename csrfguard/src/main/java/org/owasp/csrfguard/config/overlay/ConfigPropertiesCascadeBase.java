@@ -34,6 +34,7 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -41,10 +42,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 import org.owasp.csrfguard.log.ILogger;
 import org.owasp.csrfguard.log.LogLevel;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
 import org.owasp.csrfguard.util.CsrfGuardUtils;
 
 
@@ -59,6 +68,7 @@ public abstract class ConfigPropertiesCascadeBase {
 
 	/**
 	 * help subclasses manipulate properties.  note, this is only for subclasses...
+	 * the merged view is built the first time properties are read, so make changes before that
 	 * @return properties
 	 */
 	protected Properties internalProperties() {
@@ -159,10 +169,87 @@ public abstract class ConfigPropertiesCascadeBase {
 	public Set<String> propertyNames() {    
 
 		Set<String> result = new LinkedHashSet<String>();
+		if (!this.hasOverrides()) {
+			result.addAll(this.mergedView().propertyNames);
+			return result;
+		}
 		result.addAll((Set<String>)(Object)this.propertiesHelper(false).keySet());
 		return result;
 	}
 
+	/**
+	 * see if any override map has something for this config class, without creating the maps
+	 * @return true if there are overrides
+	 */
+	private boolean hasOverrides() {
+		Map<Class<? extends ConfigPropertiesCascadeBase>, Map<String, String>> overrideMaps = propertiesOverrideMap;
+		if (overrideMaps != null) {
+			Map<String, String> overrideMap = overrideMaps.get(this.getClass());
+			if (overrideMap != null && !overrideMap.isEmpty()) {
+				return true;
+			}
+		}
+		ThreadLocal<Map<Class<? extends ConfigPropertiesCascadeBase>, Map<String, String>>> threadLocal = propertiesThreadLocalOverrideMap;
+		if (threadLocal != null) {
+			overrideMaps = threadLocal.get();
+			if (overrideMaps != null) {
+				Map<String, String> overrideMap = overrideMaps.get(this.getClass());
+				if (overrideMap != null && !overrideMap.isEmpty()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * the properties of this config object merged once (there are no overrides), the config files
+	 * dont change for the life of this object (a new one is made when they do)
+	 */
+	private static final class MergedView {
+
+		/** the merged properties, never handed out since callers may change what properties() returns */
+		private final Properties properties;
+
+		/** the property names */
+		private final Set<String> propertyNames;
+
+		/** the raw values from the config files for lookups, not synchronized */
+		private final Map<String, String> values;
+
+		/**
+		 * @param properties
+		 * @param values
+		 */
+		@SuppressWarnings("unchecked")
+		private MergedView(Properties properties, Map<String, String> values) {
+			this.properties = properties;
+			this.propertyNames = Collections.unmodifiableSet(new LinkedHashSet<String>((Set<String>)(Object)properties.keySet()));
+			this.values = values;
+		}
+	}
+
+	/**
+	 * merged view of the properties, if two threads build it at once either one is fine
+	 */
+	private volatile MergedView mergedView = null;
+
+	/**
+	 * @return the merged view of the properties, use only if there are no overrides
+	 */
+	private MergedView mergedView() {
+		MergedView result = this.mergedView;
+		if (result == null) {
+			Map<String, String> values = new HashMap<String, String>();
+			for (String key : this.properties.stringPropertyNames()) {
+				values.put(key, this.properties.getProperty(key));
+			}
+			result = new MergedView(this.propertiesHelper(true), values);
+			this.mergedView = result;
+		}
+		return result;
+	}
+
 	/**
 	 * override map for properties for testing
 	 * @return the override map
@@ -185,6 +272,12 @@ public abstract class ConfigPropertiesCascadeBase {
 	 * @return the properties
 	 */
 	public Properties properties() {
+		//usually there are no overrides, so copy the merged view instead of merging again
+		if (!this.hasOverrides()) {
+			Properties result = new Properties();
+			result.putAll(this.mergedView().properties);
+			return result;
+		}
 		return propertiesHelper(true);
 	}
 
@@ -369,22 +462,32 @@ public abstract class ConfigPropertiesCascadeBase {
 
 		}
 
-		//first check threadlocal map
 		boolean hasKey = false;
-		Map<String, String> overrideMap = propertiesThreadLocalOverrideMap();
-
-		hasKey = overrideMap == null ? false : overrideMap.containsKey(key);
-		String value = hasKey ? overrideMap.get(key) : null;
-		if (!hasKey) {
-
-			overrideMap = propertiesOverrideMap();
-
-			hasKey = overrideMap == null ? null : overrideMap.containsKey(key);
+		String value = null;
+		
+		if (!this.hasOverrides()) {
+			
+			//no overrides, look in the unsynchronized map of values from the files
+			value = this.mergedView().values.get(key);
+			hasKey = value != null;
+			
+		} else {
+			//first check threadlocal map
+			Map<String, String> overrideMap = propertiesThreadLocalOverrideMap();
+	
+			hasKey = overrideMap == null ? false : overrideMap.containsKey(key);
 			value = hasKey ? overrideMap.get(key) : null;
-		}
-		if (!hasKey) {
-			hasKey = this.properties.containsKey(key);
-			value = hasKey ? this.properties.getProperty(key) : null;
+			if (!hasKey) {
+	
+				overrideMap = propertiesOverrideMap();
+	
+				hasKey = overrideMap == null ? null : overrideMap.containsKey(key);
+				value = hasKey ? overrideMap.get(key) : null;
+			}
+			if (!hasKey) {
+				hasKey = this.properties.containsKey(key);
+				value = hasKey ? this.properties.getProperty(key) : null;
+			}
 		}
 		if (!required && !hasKey) {
 			return new PropertyValueResult(defaultValue, false);
@@ -448,7 +551,13 @@ public abstract class ConfigPropertiesCascadeBase {
 	/**
 	 * when this config object was created or last checked for changes
 	 */
-	private long lastCheckedTime = System.currentTimeMillis();
+	private volatile long lastCheckedTime = System.currentTimeMillis();
+
+	/**
+	 * set while one thread checks the config files for changes, other threads
+	 * keep using this config object instead of waiting
+	 */
+	private final AtomicBoolean reloadCheckInProgress = new AtomicBoolean(false);
 
 	/**
 	 * when this config object was created or last checked for changes
@@ -474,7 +583,132 @@ public abstract class ConfigPropertiesCascadeBase {
 	/**
 	 * config file cache
 	 */
-	private static Map<Class<? extends ConfigPropertiesCascadeBase>, ConfigPropertiesCascadeBase> configFileCache = null;
+	private static final ConcurrentHashMap<Class<? extends ConfigPropertiesCascadeBase>, ConfigPropertiesCascadeBase> configFileCache = 
+			new ConcurrentHashMap<Class<? extends ConfigPropertiesCascadeBase>, ConfigPropertiesCascadeBase>();
+
+	/**
+	 * checks the config files for changes in the background so request threads dont read them
+	 */
+	private static ScheduledExecutorService configReloader = null;
+
+	/**
+	 * true once the reloader is shut down (e.g. the webapp is stopping), dont start it again
+	 */
+	private static boolean configReloaderShutdown = false;
+
+	/**
+	 * guards creating and shutting down the reloader
+	 */
+	private static final ReentrantLock configReloaderLock = new ReentrantLock();
+
+	/**
+	 * config classes the reloader is checking, these are not checked on request threads
+	 */
+	private static final Set<Class<? extends ConfigPropertiesCascadeBase>> reloadingConfigClasses = 
+			Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends ConfigPropertiesCascadeBase>, Boolean>());
+
+	/**
+	 * schedule the next background check for changes of a config class, after the
+	 * seconds to check config of the current config object
+	 * @param configClass
+	 * @param configObject current config object
+	 * @return true if scheduled, false if this config is never checked or the reloader is shut down
+	 */
+	private static boolean scheduleConfigReload(final Class<? extends ConfigPropertiesCascadeBase> configClass, 
+			ConfigPropertiesCascadeBase configObject) {
+		
+		int timeToCheckSeconds = configObject.getTimeToCheckConfigSeconds();
+		
+		//never reload
+		if (timeToCheckSeconds < 0) {
+			return false;
+		}
+		
+		configReloaderLock.lock();
+		try {
+			if (configReloaderShutdown) {
+				return false;
+			}
+			if (configReloader == null) {
+				configReloader = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "CsrfGuard config reloader");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			//0 means check all the time, but not in a busy loop
+			configReloader.schedule(new Runnable() {
+
+				public void run() {
+					reloadConfigIfChanged(configClass);
+				}
+			}, Math.max(timeToCheckSeconds, 1), TimeUnit.SECONDS);
+			return true;
+		} finally {
+			configReloaderLock.unlock();
+		}
+	}
+
+	/**
+	 * runs on the reloader thread: if the config files changed, read them and publish the new config object
+	 * @param configClass
+	 */
+	private static void reloadConfigIfChanged(Class<? extends ConfigPropertiesCascadeBase> configClass) {
+		
+		ConfigPropertiesCascadeBase configObject = configFileCache.get(configClass);
+		if (configObject == null) {
+			reloadingConfigClasses.remove(configClass);
+			return;
+		}
+		
+		try {
+			if (configObject.filesNeedReloadingBasedOnContents()) {
+				configObject = configObject.retrieveFromConfigFiles();
+				configFileCache.put(configClass, configObject);
+				CsrfGuardMetrics.getInstance().configReloaded();
+			}
+		} catch (RuntimeException re) {
+			logError("Error reloading config (will use previous version): " + configObject.getMainConfigClasspath(), re);
+		} finally {
+			//the seconds to check might have changed in the new config
+			if (!scheduleConfigReload(configClass, configObject)) {
+				reloadingConfigClasses.remove(configClass);
+			}
+		}
+	}
+
+	/**
+	 * read the config files of all the loaded configs again now (e.g. requested from JMX), instead of
+	 * waiting until they are checked for changes.  If a config cant be read the previous version stays
+	 * in use and the exception is thrown
+	 */
+	public static void reloadConfigFiles() {
+		for (Map.Entry<Class<? extends ConfigPropertiesCascadeBase>, ConfigPropertiesCascadeBase> entry : configFileCache.entrySet()) {
+			configFileCache.put(entry.getKey(), entry.getValue().retrieveFromConfigFiles());
+			CsrfGuardMetrics.getInstance().configReloaded();
+		}
+	}
+
+	/**
+	 * stop checking the config files in the background, call this when the webapp stops.
+	 * After this request threads check the files themselves again
+	 */
+	public static void shutdownConfigReloader() {
+		configReloaderLock.lock();
+		try {
+			configReloaderShutdown = true;
+			if (configReloader != null) {
+				configReloader.shutdownNow();
+				configReloader = null;
+			}
+			reloadingConfigClasses.clear();
+		} finally {
+			configReloaderLock.unlock();
+		}
+	}
 
 	/**
 	 * config file type
@@ -605,6 +839,83 @@ public abstract class ConfigPropertiesCascadeBase {
 			this.contents = contents1;
 		}
 
+		/**
+		 * the file on disk for file: configs and classpath: configs that are not in a jar, null 
+		 * if there is none (then changes are detected by reading the contents)
+		 */
+		private File statFile = null;
+
+		/**
+		 * last modified of the stat file when the contents were read, -1 if not known
+		 */
+		private long statLastModified = -1;
+
+		/**
+		 * length of the stat file when the contents were read, -1 if not known
+		 */
+		private long statLength = -1;
+
+		/**
+		 * find the file on disk for this config, if there is one
+		 * @return the file or null
+		 */
+		private File resolveStatFile() {
+			if (this.configFileType == ConfigFileType.FILE) {
+				return new File(this.configFileTypeConfig);
+			}
+			if (this.configFileType == ConfigFileType.CLASSPATH) {
+				URL url = ConfigPropertiesCascadeUtils.computeUrl(this.configFileTypeConfig, true);
+				if (url != null && "file".equals(url.getProtocol())) {
+					try {
+						return new File(url.toURI());
+					} catch (Exception e) {
+						return new File(url.getPath());
+					}
+				}
+			}
+			//e.g. in a jar
+			return null;
+		}
+
+		/**
+		 * remember the last modified and length of the file, call this before reading the contents
+		 * so a write in between is seen by the next check
+		 */
+		public void recordFileStat() {
+			if (this.statFile == null) {
+				this.statFile = this.resolveStatFile();
+			}
+			if (this.statFile == null) {
+				return;
+			}
+			long lastModified = this.statFile.lastModified();
+			//filesystems might only have second resolution, dont trust a time that recent
+			if (lastModified == 0 || System.currentTimeMillis() - lastModified < 2000) {
+				this.statLastModified = -1;
+				this.statLength = -1;
+				return;
+			}
+			this.statLastModified = lastModified;
+			this.statLength = this.statFile.length();
+		}
+
+		/**
+		 * see if the config changed since it was read.  If there is a file on disk and its last modified and 
+		 * length are the same, the file is not read, otherwise the contents are compared (so touching the file
+		 * does not cause a reload)
+		 * @param configPropertiesCascadeBase
+		 * @return true if changed
+		 */
+		public boolean changed(ConfigPropertiesCascadeBase configPropertiesCascadeBase) {
+			if (this.statFile != null && this.statLastModified != -1
+					&& this.statFile.lastModified() == this.statLastModified 
+					&& this.statFile.length() == this.statLength) {
+				return false;
+			}
+			this.recordFileStat();
+			return !ConfigPropertiesCascadeUtils.equals(this.contents, this.retrieveContents(configPropertiesCascadeBase));
+		}
+
 		/**
 		 * get the contents from the config file
 		 * @param configPropertiesCascadeBase 
@@ -770,6 +1081,7 @@ public abstract class ConfigPropertiesCascadeBase {
 			try {
 				
 				//get the string and store it first (to see if it changes later)
+				configFile.recordFileStat();
 				String configFileContents = configFile.retrieveContents(this);
 				configFile.setContents(configFileContents);
 				result.properties.load(new StringReader(configFileContents));
@@ -843,15 +1155,6 @@ public abstract class ConfigPropertiesCascadeBase {
 
 		try {
 
-			if (configFileCache == null) {
-				if (true) {
-					debugMap.put("configFileCache", null);
-				}
-
-				configFileCache = 
-						new HashMap<Class<? extends ConfigPropertiesCascadeBase>, ConfigPropertiesCascadeBase>();
-			}
-
 			ConfigPropertiesCascadeBase configObject = configFileCache.get(this.getClass());
 
 			if (configObject == null) {
@@ -863,34 +1166,46 @@ public abstract class ConfigPropertiesCascadeBase {
 				}
 
 				configObject = retrieveFromConfigFiles();
-				configFileCache.put(this.getClass(), configObject);
+				
+				//if another thread loaded it at the same time, everyone uses the same one
+				ConfigPropertiesCascadeBase existingConfigObject = configFileCache.putIfAbsent(this.getClass(), configObject);
+				if (existingConfigObject != null) {
+					configObject = existingConfigObject;
+				} else if (scheduleConfigReload(this.getClass(), configObject)) {
+					//from now on the files are checked in the background
+					reloadingConfigClasses.add(this.getClass());
+				}
 
-			} else {
+			} else if (!reloadingConfigClasses.contains(this.getClass())) {
 
-				//see if that much time has passed
-				if (configObject.needToCheckIfFilesNeedReloading()) {
+				//no background reloader (e.g. it was shut down), see if that much time has passed, 
+				//only one thread checks, the others use the current config so nobody blocks on the file reads
+				if (configObject.needToCheckIfFilesNeedReloading() 
+						&& configObject.reloadCheckInProgress.compareAndSet(false, true)) {
 
 					if (true) {
 						debugMap.put("needToCheckIfFilesNeedReloading", true);
 					}
-					synchronized (configObject) {
-
-						configObject = configFileCache.get(this.getClass());
+					ConfigPropertiesCascadeBase checkedConfigObject = configObject;
+					try {
 
-						//check again in case another thread did it
-						if (configObject.needToCheckIfFilesNeedReloading()) {
+						//check again in case another thread just did it
+						if (checkedConfigObject.needToCheckIfFilesNeedReloading()) {
 
 							if (true) {
 								debugMap.put("needToCheckIfFilesNeedReloading2", true);
 							}
-							if (configObject.filesNeedReloadingBasedOnContents()) {
+							if (checkedConfigObject.filesNeedReloadingBasedOnContents()) {
 								if (true) {
 									debugMap.put("filesNeedReloadingBasedOnContents", true);
 								}
 								configObject = retrieveFromConfigFiles();
 								configFileCache.put(this.getClass(), configObject);
+								CsrfGuardMetrics.getInstance().configReloaded();
 							}
 						}
+					} finally {
+						checkedConfigObject.reloadCheckInProgress.set(false);
 					}
 				}
 			}
@@ -941,7 +1256,7 @@ public abstract class ConfigPropertiesCascadeBase {
 		try {
 			//lets look at all the files and see if they have changed...
 			for (ConfigFile configFile : this.configFiles) {
-				if (!ConfigPropertiesCascadeUtils.equals(configFile.getContents(), configFile.retrieveContents(this))) {
+				if (configFile.changed(this)) {
 					return true;
 				}
 			}
@@ -1269,7 +1584,8 @@ public abstract class ConfigPropertiesCascadeBase {
 	 */
 	public Map<String, String> propertiesMap(Pattern pattern) {
 		Map<String, String> result = new LinkedHashMap<String, String>();
-		for (String key: propertyNames()) {
+		Set<String> propertyNames = this.hasOverrides() ? propertyNames() : this.mergedView().propertyNames;
+		for (String key: propertyNames) {
 			if (pattern.matcher(key).matches()) {
 				result.put(key, propertyValueString(key));
 			}
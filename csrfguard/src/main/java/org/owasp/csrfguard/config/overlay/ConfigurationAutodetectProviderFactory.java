@@ -7,11 +7,13 @@ package org.owasp.csrfguard.config.overlay;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 
 import org.owasp.csrfguard.config.ConfigurationProvider;
 import org.owasp.csrfguard.config.ConfigurationProviderFactory;
 import org.owasp.csrfguard.config.PropertiesConfigurationProviderFactory;
 import org.owasp.csrfguard.util.CsrfGuardUtils;
+import org.owasp.csrfguard.util.SingleFlightLoader;
 
 /**
  * The default configuration provider is: org.owasp.csrfguard.config.overlay.ConfigurationAutodetectProviderFactory
@@ -32,51 +34,78 @@ public class ConfigurationAutodetectProviderFactory implements
 	 */
 	private static ExpirableCache<Boolean, ConfigurationProvider> configurationProviderCache = new ExpirableCache<Boolean, ConfigurationProvider>(2);
 	
+	/**
+	 * only one thread reads the overlay file and builds the provider when the cache is empty
+	 */
+	private static SingleFlightLoader<ConfigurationProvider> configurationProviderLoader = new SingleFlightLoader<ConfigurationProvider>();
+	
+	/**
+	 * forget the cached provider, so the next call reads the overlay again and builds a new one
+	 */
+	public static void clearCache() {
+		configurationProviderCache.clear();
+	}
+	
 	/**
 	 * @see org.owasp.csrfguard.config.ConfigurationProviderFactory#retrieveConfiguration(java.util.Properties)
 	 */
-	public ConfigurationProvider retrieveConfiguration(Properties defaultProperties) {
+	public ConfigurationProvider retrieveConfiguration(final Properties defaultProperties) {
 		
 		ConfigurationProvider configurationProvider = configurationProviderCache.get(Boolean.TRUE);
 		
 		if (configurationProvider == null) {
-			synchronized (ConfigurationAutodetectProviderFactory.class) {
-				if (configurationProvider == null) {
-					
-					Class<? extends ConfigurationProviderFactory> factoryClass = null;
-					
-					//if there is an overlay, and that specifies the factory, use that
-					InputStream inputStream = getClass().getClassLoader().getResourceAsStream(ConfigurationOverlayProvider.OWASP_CSRF_GUARD_OVERLAY_PROPERTIES);
-					if (inputStream != null) {
-						Properties theProperties = new Properties();
-						try {
-							theProperties.load(inputStream);
-						} catch (IOException ioe) {
-							throw new RuntimeException("Error reading config file: " + ConfigurationOverlayProvider.OWASP_CSRF_GUARD_OVERLAY_PROPERTIES, ioe);
-						}
-						CsrfGuardUtils.closeQuietly(inputStream);
-						
-						String factoryClassName = theProperties.getProperty("org.owasp.csrfguard.configuration.provider.factory");
-						if (factoryClassName != null && !"".equals(factoryClassName)) {
-							if (ConfigurationAutodetectProviderFactory.class.getName().equals(factoryClassName)) {
-								throw new RuntimeException("Cannot specify auto detect factory in override file (recursion), pick the actual factory: " + factoryClassName);
-							}
-							factoryClass = CsrfGuardUtils.forName(factoryClassName);
-						}
-					}
-					
-					if (factoryClass == null) {
-						factoryClass = PropertiesConfigurationProviderFactory.class;
+			configurationProvider = configurationProviderLoader.load(new Callable<ConfigurationProvider>() {
+
+				public ConfigurationProvider call() {
+					//check again in case another thread just loaded it
+					ConfigurationProvider cachedConfigurationProvider = configurationProviderCache.get(Boolean.TRUE);
+					if (cachedConfigurationProvider != null) {
+						return cachedConfigurationProvider;
 					}
-					
-					ConfigurationProviderFactory factory = CsrfGuardUtils.newInstance(factoryClass);
-					configurationProvider = factory.retrieveConfiguration(defaultProperties);
-					configurationProviderCache.put(Boolean.TRUE, configurationProvider);
-					
+					return retrieveNewConfiguration(defaultProperties);
+				}
+			});
+		}
+		
+		return configurationProvider;
+	}
+
+	/**
+	 * read the overlay to see which factory to use, and cache the provider it makes
+	 * @param defaultProperties
+	 * @return the provider
+	 */
+	private ConfigurationProvider retrieveNewConfiguration(Properties defaultProperties) {
+		
+		Class<? extends ConfigurationProviderFactory> factoryClass = null;
+		
+		//if there is an overlay, and that specifies the factory, use that
+		InputStream inputStream = getClass().getClassLoader().getResourceAsStream(ConfigurationOverlayProvider.OWASP_CSRF_GUARD_OVERLAY_PROPERTIES);
+		if (inputStream != null) {
+			Properties theProperties = new Properties();
+			try {
+				theProperties.load(inputStream);
+			} catch (IOException ioe) {
+				throw new RuntimeException("Error reading config file: " + ConfigurationOverlayProvider.OWASP_CSRF_GUARD_OVERLAY_PROPERTIES, ioe);
+			}
+			CsrfGuardUtils.closeQuietly(inputStream);
+			
+			String factoryClassName = theProperties.getProperty("org.owasp.csrfguard.configuration.provider.factory");
+			if (factoryClassName != null && !"".equals(factoryClassName)) {
+				if (ConfigurationAutodetectProviderFactory.class.getName().equals(factoryClassName)) {
+					throw new RuntimeException("Cannot specify auto detect factory in override file (recursion), pick the actual factory: " + factoryClassName);
 				}
+				factoryClass = CsrfGuardUtils.forName(factoryClassName);
 			}
 		}
 		
+		if (factoryClass == null) {
+			factoryClass = PropertiesConfigurationProviderFactory.class;
+		}
+		
+		ConfigurationProviderFactory factory = CsrfGuardUtils.newInstance(factoryClass);
+		ConfigurationProvider configurationProvider = factory.retrieveConfiguration(defaultProperties);
+		configurationProviderCache.put(Boolean.TRUE, configurationProvider);
 		return configurationProvider;
 	}
 
@@ -16,6 +16,26 @@ import org.owasp.csrfguard.config.PropertiesConfigurationProvider;
 public class ConfigurationOverlayProviderFactory implements
 		ConfigurationProviderFactory {
 
+	/**
+	 * last provider that was built and the properties it was built from, reused if the properties have not changed
+	 */
+	private static volatile BuiltProvider previous = null;
+	
+	/**
+	 * a provider and the properties it was built from
+	 */
+	private static final class BuiltProvider {
+		
+		private final Properties properties;
+		
+		private final PropertiesConfigurationProvider provider;
+		
+		private BuiltProvider(Properties properties, PropertiesConfigurationProvider provider) {
+			this.properties = properties;
+			this.provider = provider;
+		}
+	}
+	
 	/**
 	 * 
 	 */
@@ -29,7 +49,18 @@ public class ConfigurationOverlayProviderFactory implements
 		ConfigurationOverlayProvider configurationOverlayProvider = ConfigurationOverlayProvider.retrieveConfig();
 		Properties properties = configurationOverlayProvider.properties();
 		
-		return new PropertiesConfigurationProvider(properties);
+		BuiltProvider previousBuiltProvider = previous;
+		
+		//nothing changed, dont rebuild anything
+		if (previousBuiltProvider != null && properties.equals(previousBuiltProvider.properties)) {
+			return previousBuiltProvider.provider;
+		}
+		
+		//only rebuild the parts whose properties changed
+		PropertiesConfigurationProvider provider = new PropertiesConfigurationProvider(properties, 
+				previousBuiltProvider == null ? null : previousBuiltProvider.provider);
+		previous = new BuiltProvider(properties, provider);
+		return provider;
     }
 	
 }
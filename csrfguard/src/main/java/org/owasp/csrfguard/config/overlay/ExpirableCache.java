@@ -28,11 +28,26 @@
  */
 package org.owasp.csrfguard.config.overlay;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -41,10 +56,16 @@ import java.util.Set;
  * Also, every so often (e.g. 2 minutes) all items are checked for expiration.
  * If no timetolive is set, it will default to 1 day.  The max time to live is
  * one day.
- * This is synchronized so that all access is safe.
+ * This is backed by a ConcurrentHashMap so that all access is safe without a
+ * global lock.  Expiry is checked on every read, and the periodic sweep for expired
+ * items runs on a shared daemon thread, so reads and writes never scan the cache.
+ * Optionally a max size can be set, then the least recently used items are evicted
+ * (a batch at a time) by that thread when the cache grows past it, so the cache can
+ * briefly be over the max size.
  * <p />
- * Note, evictions are check for periodically, but only when the map is accessed (and even then only every few minutes).
- * so you can check for evictions externally, or clear the map if you are done with it.
+ * Note, the caches are only weakly referenced by the sweeper thread, stop it with 
+ * {@link #shutdownEvictionSweeper()} when the webapp stops.  After that the max size is
+ * enforced on the thread which puts, and expired items are only removed when read.
  * @version $Id: ExpirableCache.java,v 1.1 2008-11-27 14:25:50 mchyzer Exp $
  * @author mchyzer
  * @param <K> key type
@@ -63,47 +84,70 @@ public class ExpirableCache<K,V> implements Serializable {
   static long TIME_BETWEEN_EVICTIONS_MILLIS = 2 * 60 * 1000;
   
   /** last time the cache was checked for evictions */
-  long lastEvictionCheck = System.currentTimeMillis();
+  volatile long lastEvictionCheck = System.currentTimeMillis();
+  
+  /** only one thread sweeps for evictions at a time */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  
+  /** set while evicting down to the max size is scheduled on the sweeper thread */
+  private final AtomicBoolean trimScheduled = new AtomicBoolean(false);
+  
+  /** sweeps the caches for expired items and evicts the items over the max size, so request threads dont */
+  private static ScheduledExecutorService evictionSweeper = null;
+  
+  /** true once the sweeper is shut down (e.g. the webapp is stopping), dont start it again */
+  private static boolean evictionSweeperShutdown = false;
+  
+  /** guards creating and shutting down the sweeper */
+  private static final ReentrantLock evictionSweeperLock = new ReentrantLock();
+  
+  /** the caches to sweep, weak so the caches which are not used anymore are garbage collected */
+  private static final Queue<WeakReference<ExpirableCache<?, ?>>> sweptCaches = 
+      new ConcurrentLinkedQueue<WeakReference<ExpirableCache<?, ?>>>();
   
   /** cache map */
-  private Map<K,ExpirableValue<V>> cache = new HashMap<K,ExpirableValue<V>>();
+  private ConcurrentHashMap<K,ExpirableValue<V>> cache = new ConcurrentHashMap<K,ExpirableValue<V>>();
+  
+  /** max number of elements in the cache, 0 means no max */
+  private int maxSize = 0;
   
   /** number of elements inserted into the cache */
-  private int cacheInserts = 0;
+  private final AtomicLong cacheInserts = new AtomicLong();
   
   /** numebr of times an element was retrieved from cache successfully */
-  private int cacheHits = 0;
+  private final AtomicLong cacheHits = new AtomicLong();
   
-  /** number of evictions from cache when thigns expire */
-  private int cacheEvictions = 0;
+  /** number of evictions from cache when thigns expire (or the cache is full) */
+  private final AtomicLong cacheEvictions = new AtomicLong();
   
-  /** global number of elements inserted into the cache, no need to synchronize */
-  private static int globalCacheInserts = 0;
+  /** global number of elements inserted into the cache */
+  private static final AtomicLong globalCacheInserts = new AtomicLong();
   
-  /** numebr of times an element was retrieved from cache successfully, no need to synchronize */
-  private static int globalCacheHits = 0;
+  /** numebr of times an element was retrieved from cache successfully */
+  private static final AtomicLong globalCacheHits = new AtomicLong();
   
-  /** number of evictions from cache when thigns expire, no need to synchronize */
-  private static int globalCacheEvictions = 0;
+  /** number of evictions from cache when thigns expire */
+  private static final AtomicLong globalCacheEvictions = new AtomicLong();
   
   /** when was the last clear of all */
-  private static long lastClearStatic = -1;
+  private static volatile long lastClearStatic = -1;
   
   /** when was the last clear of this instance */
-  private long lastClear = System.currentTimeMillis();
+  private volatile long lastClear = System.currentTimeMillis();
   
   /**
    * 
    */
   public ExpirableCache() {
     super();
+    registerForSweeps(this);
   }
   
   /**
    * delete the cache
    *
    */
-  public synchronized void clear() {
+  public void clear() {
     this.cache.clear();
   }
 
@@ -120,6 +164,19 @@ public class ExpirableCache<K,V> implements Serializable {
     if (newTimeToLiveMillis < MAX_TIME_TO_LIVE_MILLIS) {
       this.defaultTimeToLiveInMillis = newTimeToLiveMillis;
     }
+    registerForSweeps(this);
+  }
+
+  /**
+   * @param defaultTimeToLiveInMinutes time in minutes is the default cache time to live for content
+   * @param theMaxSize max number of elements, the least recently used are evicted past this, 0 for no max
+   */
+  public ExpirableCache(int defaultTimeToLiveInMinutes, int theMaxSize) {
+    this(defaultTimeToLiveInMinutes);
+    if (theMaxSize < 0) {
+      throw new RuntimeException("Max size must be 0 (no max) or greater");
+    }
+    this.maxSize = theMaxSize;
   }
 
   /**
@@ -175,6 +232,87 @@ public class ExpirableCache<K,V> implements Serializable {
     if (newTimeToLiveMillis < MAX_TIME_TO_LIVE_MILLIS) {
       this.defaultTimeToLiveInMillis = newTimeToLiveMillis;
     }
+    registerForSweeps(this);
+  }
+
+  /**
+   * a deserialized cache is swept like a new one
+   * @param in
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    registerForSweeps(this);
+  }
+
+  /**
+   * add a cache to the ones the sweeper thread checks, and start the thread with the first one
+   * @param expirableCache
+   */
+  private static void registerForSweeps(ExpirableCache<?, ?> expirableCache) {
+    sweptCaches.add(new WeakReference<ExpirableCache<?, ?>>(expirableCache));
+    evictionSweeperLock.lock();
+    try {
+      if (evictionSweeper != null || evictionSweeperShutdown) {
+        return;
+      }
+      evictionSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "CsrfGuard cache eviction sweeper");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      evictionSweeper.scheduleWithFixedDelay(new Runnable() {
+
+        public void run() {
+          sweepAll();
+        }
+      }, TIME_BETWEEN_EVICTIONS_MILLIS, TIME_BETWEEN_EVICTIONS_MILLIS, TimeUnit.MILLISECONDS);
+    } finally {
+      evictionSweeperLock.unlock();
+    }
+  }
+
+  /**
+   * runs on the sweeper thread: remove the expired items of all the caches, and the least recently
+   * used items of the caches over their max size
+   */
+  private static void sweepAll() {
+    Iterator<WeakReference<ExpirableCache<?, ?>>> iterator = sweptCaches.iterator();
+    while (iterator.hasNext()) {
+      ExpirableCache<?, ?> expirableCache = iterator.next().get();
+      if (expirableCache == null) {
+        iterator.remove();
+        continue;
+      }
+      try {
+        expirableCache.checkForEvictions(false);
+        if (expirableCache.maxSize > 0 && expirableCache.cache.size() > expirableCache.maxSize) {
+          expirableCache.evictLeastRecentlyUsed();
+        }
+      } catch (RuntimeException re) {
+        //keep sweeping the other caches, and this one next time
+      }
+    }
+  }
+
+  /**
+   * stop the sweeper thread, call this when the webapp stops
+   */
+  public static void shutdownEvictionSweeper() {
+    evictionSweeperLock.lock();
+    try {
+      evictionSweeperShutdown = true;
+      if (evictionSweeper != null) {
+        evictionSweeper.shutdownNow();
+        evictionSweeper = null;
+      }
+    } finally {
+      evictionSweeperLock.unlock();
+    }
   }
 
   /**
@@ -185,12 +323,20 @@ public class ExpirableCache<K,V> implements Serializable {
     return this.defaultTimeToLiveInMillis;
   }
 
+  /**
+   * max number of elements in the cache
+   * @return the max size, 0 means no max
+   */
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
   /**
    * put a value into the cache, accept the default time to live for this cache
    * @param key
    * @param value
    */
-  public synchronized void put(K key, V value) {
+  public void put(K key, V value) {
     this.putHelper(key, value, this.defaultTimeToLiveInMillis);
   }
   
@@ -201,7 +347,7 @@ public class ExpirableCache<K,V> implements Serializable {
    * @param timeToLiveInMinutes time to live for this item in minutes.
    * If -1 then use the default
    */
-  public synchronized void put(K key, V value, int timeToLiveInMinutes) {
+  public void put(K key, V value, int timeToLiveInMinutes) {
     
     //see if the default
     if (timeToLiveInMinutes == -1) {
@@ -221,9 +367,9 @@ public class ExpirableCache<K,V> implements Serializable {
    * @param value
    * @param proposedTimeToLiveInMillis millis time to live
    */
-  synchronized void putHelper(K key, V value, long proposedTimeToLiveInMillis) {
+  void putHelper(K key, V value, long proposedTimeToLiveInMillis) {
     
-    this.checkForEvictions(true);
+    this.clearIfAllCleared();
     long newTimeToLiveInMillis = this.defaultTimeToLiveInMillis;
     //dont use what was inputted if it is out of range
     if (proposedTimeToLiveInMillis > 0 
@@ -232,8 +378,42 @@ public class ExpirableCache<K,V> implements Serializable {
     }
     ExpirableValue<V> expirableValue = new ExpirableValue<V>(value, newTimeToLiveInMillis);
     this.cache.put(key, expirableValue);
-    this.cacheInserts++;
-    globalCacheInserts++;
+    this.cacheInserts.incrementAndGet();
+    globalCacheInserts.incrementAndGet();
+    
+    if (this.maxSize > 0 && this.cache.size() > this.maxSize) {
+      this.scheduleEvictLeastRecentlyUsed();
+    }
+  }
+
+  /**
+   * evict down to the max size on the sweeper thread, or on this thread if the sweeper is shut down
+   */
+  private void scheduleEvictLeastRecentlyUsed() {
+    //already scheduled
+    if (!this.trimScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    Runnable evictLeastRecentlyUsed = new Runnable() {
+
+      public void run() {
+        try {
+          ExpirableCache.this.evictLeastRecentlyUsed();
+        } finally {
+          ExpirableCache.this.trimScheduled.set(false);
+        }
+      }
+    };
+    evictionSweeperLock.lock();
+    try {
+      if (evictionSweeper != null) {
+        evictionSweeper.execute(evictLeastRecentlyUsed);
+        return;
+      }
+    } finally {
+      evictionSweeperLock.unlock();
+    }
+    evictLeastRecentlyUsed.run();
   }
   
   /**
@@ -245,15 +425,14 @@ public class ExpirableCache<K,V> implements Serializable {
   
   /**
    * check and remove elements that are stale
-   * @param onlyCheckIfNeeded true if only check every so often (e.g. every two minutes)
+   * @param onlyCheckIfNeeded true if only check every so often (e.g. every two minutes), 
+   * and skip the check if another thread is already doing it
    */
-  public synchronized void checkForEvictions(boolean onlyCheckIfNeeded) {
+  public void checkForEvictions(boolean onlyCheckIfNeeded) {
     long now = System.currentTimeMillis();
     
     //first see if there is an all clear
-    if (lastClearStatic > this.lastClear) {
-      this.clear();
-      this.lastClear = now;
+    if (this.clearIfAllCleared()) {
       return;
     }
     
@@ -261,59 +440,145 @@ public class ExpirableCache<K,V> implements Serializable {
       if (now - this.lastEvictionCheck < ExpirableCache.TIME_BETWEEN_EVICTIONS_MILLIS) {
         return;
       }
+      //someone else is sweeping, dont wait for them
+      if (!this.evictionLock.tryLock()) {
+        return;
+      }
+    } else {
+      this.evictionLock.lock();
     }
     
-    //go through all elements, evict if stale
-    Set<K> keySet = this.cache.keySet();
-    Iterator<K> keyIterator = keySet.iterator();
-    while (keyIterator.hasNext()) {
-      K key = keyIterator.next();
-      ExpirableValue<V> expirableValue = this.cache.get(key);
-      if (expirableValue.expired()) {
-        keyIterator.remove();
-        this.cacheEvictions++;
-        ExpirableCache.globalCacheEvictions++;
+    try {
+      //go through all elements, evict if stale
+      Iterator<Map.Entry<K, ExpirableValue<V>>> entryIterator = this.cache.entrySet().iterator();
+      while (entryIterator.hasNext()) {
+        Map.Entry<K, ExpirableValue<V>> entry = entryIterator.next();
+        if (entry.getValue().expired()) {
+          this.evict(entry.getKey(), entry.getValue());
+        }
       }
+      
+      //set that we just checked
+      this.lastEvictionCheck = now;
+    } finally {
+      this.evictionLock.unlock();
     }
+  }
+  
+  /**
+   * clear this cache if all the caches were cleared since it was last cleared
+   * @return true if cleared
+   */
+  private boolean clearIfAllCleared() {
+    if (lastClearStatic > this.lastClear) {
+      this.lastClear = System.currentTimeMillis();
+      this.clear();
+      return true;
+    }
+    return false;
+  }
+  
+  /**
+   * evict the least recently used elements so the cache is a tenth below the max size, 
+   * so the sort is only done once every so many puts.  Runs on the sweeper thread
+   */
+  private void evictLeastRecentlyUsed() {
     
-    //set that we just checked
-    this.lastEvictionCheck = now;
+    //someone else is evicting
+    if (!this.evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      int targetSize = this.maxSize - (this.maxSize / 10);
+      if (this.cache.size() <= targetSize) {
+        return;
+      }
+      
+      //other threads keep touching the values, so sort a copy of the access times or the order is inconsistent
+      List<AccessSnapshot<K, V>> snapshots = new ArrayList<AccessSnapshot<K, V>>(this.cache.size());
+      for (Map.Entry<K, ExpirableValue<V>> entry : this.cache.entrySet()) {
+        snapshots.add(new AccessSnapshot<K, V>(entry.getKey(), entry.getValue()));
+      }
+      Collections.sort(snapshots, new Comparator<AccessSnapshot<K, V>>() {
+
+        public int compare(AccessSnapshot<K, V> first, AccessSnapshot<K, V> second) {
+          return first.lastAccessTime < second.lastAccessTime ? -1 : (first.lastAccessTime == second.lastAccessTime ? 0 : 1);
+        }
+      });
+      
+      //only removes the value that was snapshotted, not one put since
+      int toEvict = snapshots.size() - targetSize;
+      for (int i = 0; i < toEvict; i++) {
+        AccessSnapshot<K, V> snapshot = snapshots.get(i);
+        this.evict(snapshot.key, snapshot.value);
+      }
+    } finally {
+      this.evictionLock.unlock();
+    }
   }
   
   /**
-   * get a value or null if not there or expired
-   * this will check for eviction, and evict if evictable
+   * key, value and last access time at the time of the least recently used eviction
+   */
+  private static final class AccessSnapshot<K, V> {
+    
+    /** key in the cache */
+    private final K key;
+    
+    /** value in the cache when the snapshot was taken */
+    private final ExpirableValue<V> value;
+    
+    /** last access time of the value when the snapshot was taken */
+    private final long lastAccessTime;
+    
+    /**
+     * @param key
+     * @param value
+     */
+    private AccessSnapshot(K key, ExpirableValue<V> value) {
+      this.key = key;
+      this.value = value;
+      this.lastAccessTime = value.getLastAccessTime();
+    }
+  }
+  
+  /**
+   * remove the element if it is still this value, and count it
    * @param key
-   * @return the value or null if not there or evicted
+   * @param value
    */
-  public synchronized V get(K key) {
-
-    this.checkForEvictions(true);
-    return this.getHelper(key);
+  private void evict(K key, ExpirableValue<V> value) {
+    if (this.cache.remove(key, value)) {
+      this.cacheEvictions.incrementAndGet();
+      ExpirableCache.globalCacheEvictions.incrementAndGet();
+    }
   }
+  
   /**
    * get a value or null if not there or expired
-   * this will check for eviction, and evict if evictable
+   * this will evict the value if it is expired, the other expired values are removed by the sweeper thread
    * @param key
    * @return the value or null if not there or evicted
    */
-  private synchronized V getHelper(K key) {
+  public V get(K key) {
 
+    this.clearIfAllCleared();
+    
     ExpirableValue<V> value = this.cache.get(key);
     if (value == null) {
-      //shouldnt have a key with no value, probably doesnt exist, but just in case
-      this.cache.remove(key);
       return null;
     }
     if (value.expired()) {
-      this.cacheEvictions++;
-      ExpirableCache.globalCacheEvictions++;
-      this.cache.remove(key);
+      this.evict(key, value);
       return null;
     }
+    //only needed for lru, saves a write per read otherwise
+    if (this.maxSize > 0) {
+      value.touch();
+    }
     V content = value.getContent();
-    this.cacheHits++;
-    ExpirableCache.globalCacheHits++;
+    this.cacheHits.incrementAndGet();
+    ExpirableCache.globalCacheHits.incrementAndGet();
     return content;
   }
   
@@ -323,7 +588,7 @@ public class ExpirableCache<K,V> implements Serializable {
    * (even if recently checked)
    * @return the number of elements
    */
-  public synchronized int size(boolean evictEvictables) {
+  public int size(boolean evictEvictables) {
     if (evictEvictables) {
       this.checkForEvictions(false);
     }
@@ -336,7 +601,7 @@ public class ExpirableCache<K,V> implements Serializable {
    * @return Returns the cacheInserts.
    */
   public int getCacheInserts() {
-    return this.cacheInserts;
+    return (int)this.cacheInserts.get();
   }
 
   
@@ -345,7 +610,7 @@ public class ExpirableCache<K,V> implements Serializable {
    * @return Returns the cacheEvictions.
    */
   public int getCacheEvictions() {
-    return this.cacheEvictions;
+    return (int)this.cacheEvictions.get();
   }
 
   
@@ -354,7 +619,7 @@ public class ExpirableCache<K,V> implements Serializable {
    * @return Returns the cacheHits.
    */
   public int getCacheHits() {
-    return this.cacheHits;
+    return (int)this.cacheHits.get();
   }
 
   /**
@@ -365,16 +630,40 @@ public class ExpirableCache<K,V> implements Serializable {
 public String toString() {
     this.checkForEvictions(true);
     return this.getClass().getSimpleName() + ": size: " + this.size(false)
-      + ", cacheHits: " + this.getCacheHits() + ", cacheInserts: " 
-      + this.getCacheInserts() + ", cacheEvictions: " + this.cacheEvictions;
+      + ", cacheHits: " + this.cacheHits.get() + ", cacheInserts: " 
+      + this.cacheInserts.get() + ", cacheEvictions: " + this.cacheEvictions.get();
   }
   
+  /**
+   * number of items inserted into all the caches
+   * @return the global cache inserts
+   */
+  public static long getGlobalCacheInserts() {
+    return globalCacheInserts.get();
+  }
+
+  /**
+   * number of items evicted from all the caches
+   * @return the global cache evictions
+   */
+  public static long getGlobalCacheEvictions() {
+    return globalCacheEvictions.get();
+  }
+
+  /**
+   * number of items successfully retrieved from all the caches
+   * @return the global cache hits
+   */
+  public static long getGlobalCacheHits() {
+    return globalCacheHits.get();
+  }
+
   /**
    * string representation of cache
    * @return the string value
    */
   public static String staticToString() {
-    return "ExpirableCacheGlobal, cacheHits: " + globalCacheHits + ", cacheInserts: " 
-      + globalCacheInserts + ", cacheEvictions: " + globalCacheEvictions;
+    return "ExpirableCacheGlobal, cacheHits: " + globalCacheHits.get() + ", cacheInserts: " 
+      + globalCacheInserts.get() + ", cacheEvictions: " + globalCacheEvictions.get();
   }
 }
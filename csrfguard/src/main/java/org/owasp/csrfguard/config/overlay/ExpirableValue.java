@@ -43,6 +43,9 @@ public class ExpirableValue<T> implements Serializable {
   /** this is the time it was placed in the cache */
   private long timePlacedInCache = System.currentTimeMillis();
   
+  /** last time this was read from the cache, for least recently used eviction */
+  private volatile long lastAccessTime = this.timePlacedInCache;
+  
   /** the time to live is by default 1 day */
   private long timeToLiveInCacheMillis = ExpirableCache.MAX_TIME_TO_LIVE_MILLIS;
   
@@ -65,6 +68,21 @@ public class ExpirableValue<T> implements Serializable {
     this.content = theContent;
   }
 
+  /**
+   * mark that this was just read from the cache
+   */
+  void touch() {
+    this.lastAccessTime = System.currentTimeMillis();
+  }
+
+  /**
+   * last time this was read from the cache (or put in it)
+   * @return the millis
+   */
+  long getLastAccessTime() {
+    return this.lastAccessTime;
+  }
+
   /**
    * dont call this on expired content!  check first.  get the content
    * @return Returns the content.
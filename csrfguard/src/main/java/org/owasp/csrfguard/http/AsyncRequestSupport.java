@@ -0,0 +1,125 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.http;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.CsrfGuardRequestContext;
+
+/**
+ * Servlet 3.0 async handling for the CsrfGuardFilter.  Only call this when the
+ * container supports servlet 3.0 (see CsrfGuardFilter), the classes referenced
+ * here do not exist in servlet 2.5 containers.
+ */
+public final class AsyncRequestSupport {
+
+	/**
+	 * request attribute set once the token update listener is registered, so
+	 * async dispatches back through the filter do not register it again
+	 */
+	private static final String LISTENER_REGISTERED_ATTRIBUTE = AsyncRequestSupport.class.getName() + ".listenerRegistered";
+
+	private AsyncRequestSupport() {
+		
+	}
+
+	/**
+	 * @param request
+	 * @return true if this is an AsyncContext.dispatch() of a request that was already validated
+	 */
+	public static boolean isAsyncDispatch(ServletRequest request) {
+		return request.getDispatcherType() == DispatcherType.ASYNC;
+	}
+
+	/**
+	 * if the request went async, update the tokens when the response completes
+	 * (possibly on another thread) instead of when the filter chain returns
+	 * @param request
+	 * @param csrfGuard
+	 * @return true if the update is deferred, false if the caller should update the tokens now
+	 */
+	public static boolean updateTokensOnComplete(HttpServletRequest request, CsrfGuard csrfGuard) {
+		if (!request.isAsyncStarted()) {
+			return false;
+		}
+		if (request.getAttribute(LISTENER_REGISTERED_ATTRIBUTE) == null) {
+			request.setAttribute(LISTENER_REGISTERED_ATTRIBUTE, Boolean.TRUE);
+			request.getAsyncContext().addListener(new UpdateTokensListener(request, csrfGuard));
+		}
+		return true;
+	}
+
+	/**
+	 * updates the tokens of the original request once the async response completes
+	 */
+	private static final class UpdateTokensListener implements AsyncListener {
+
+		private final HttpServletRequest request;
+
+		private final CsrfGuard csrfGuard;
+
+		public UpdateTokensListener(HttpServletRequest request, CsrfGuard csrfGuard) {
+			this.request = request;
+			this.csrfGuard = csrfGuard;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			/** completion runs on a container thread the filter never saw **/
+			HttpServletRequest previous = CsrfGuardRequestContext.attach(request);
+			try {
+				csrfGuard.updateTokens(request);
+			} finally {
+				CsrfGuardRequestContext.restore(previous);
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			/** the container completes the request after a timeout, onComplete still fires **/
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			/** the container completes the request after an error, onComplete still fires **/
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			/** listeners are cleared when async is restarted, stay registered **/
+			event.getAsyncContext().addListener(this);
+		}
+	}
+
+}
@@ -0,0 +1,544 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.owasp.csrfguard.CsrfGuard;
+import org.owasp.csrfguard.log.LogLevel;
+import org.owasp.csrfguard.util.CsrfGuardUtils;
+
+/**
+ * Counters and histograms of what CsrfGuard does: requests filtered and let through, token
+ * validations and rejections, tokens generated and rotated, page tokens per session, config
+ * reloads, the latency of the filter and what the JavaScriptServlet served and its latency.  Recording is lock free (see StripedCounter and
+ * Histogram) so it is always on.  The metrics are available as an MXBean (registered by the
+ * CsrfGuardServletContextListener) and can be pushed to a monitoring system with an
+ * IMetricsExporter.  The latency of each stage of the request pipeline can also be traced,
+ * see ITracer.
+ */
+public final class CsrfGuardMetrics implements CsrfGuardMetricsMXBean {
+
+	/**
+	 * why a request was let through without checking the token
+	 */
+	public static enum Bypass {
+		/** CsrfGuard is not enabled */
+		Disabled,
+		/** there is no session and ValidateWhenNoSessionExists is false */
+		NoSession,
+		/** async dispatch, the request was validated on the original dispatch */
+		AsyncDispatch,
+		/** the page or method is not protected */
+		Unprotected
+	}
+
+	/**
+	 * where the token was checked against
+	 */
+	public static enum ValidationMode {
+		Session,
+		PageToken,
+		Ajax
+	}
+
+	/**
+	 * why a request was rejected
+	 */
+	public static enum RejectionCause {
+		/** the token is missing from the request */
+		MissingToken,
+		/** the session does not have a token yet */
+		NoSessionToken,
+		/** the token does not match the session token */
+		SessionTokenMismatch,
+		/** the token does not match the page token */
+		PageTokenMismatch
+	}
+
+	/**
+	 * what the JavaScriptServlet served
+	 */
+	public static enum ScriptResponse {
+		/** the javascript, generated with the session token */
+		JavaScript,
+		/** the page tokens of the session, fetched by the javascript */
+		PageTokens,
+		/** the session token, fetched by the javascript (FETCH-CSRF-TOKEN header) */
+		Token,
+		/** a 404, the referer did not match or page tokens are not enabled */
+		NotFound
+	}
+
+	private static final CsrfGuardMetrics instance = new CsrfGuardMetrics();
+
+	/**
+	 * @return the metrics of this webapp
+	 */
+	public static CsrfGuardMetrics getInstance() {
+		return instance;
+	}
+
+	private final StripedCounter requestsFiltered = new StripedCounter();
+
+	private final StripedCounter[] bypasses = counters(Bypass.values().length);
+
+	private final StripedCounter[] validations = counters(ValidationMode.values().length);
+
+	private final StripedCounter[] rejections = counters(RejectionCause.values().length);
+
+	private final StripedCounter tokensGenerated = new StripedCounter();
+
+	private final StripedCounter rotations = new StripedCounter();
+
+	private final StripedCounter configReloads = new StripedCounter();
+
+	private final StripedCounter asyncActionsDiscarded = new StripedCounter();
+
+	private final StripedCounter requestsThrottled = new StripedCounter();
+
+	private final Histogram pageTokensPerSession = new Histogram();
+
+	private final Histogram filterLatencyNanos = new Histogram();
+
+	private final StripedCounter[] scriptResponses = counters(ScriptResponse.values().length);
+
+	private final Histogram javaScriptLatencyNanos = new Histogram();
+
+	private final Histogram tokenFetchLatencyNanos = new Histogram();
+
+	/**
+	 * exports the metrics, null if there is no exporter
+	 */
+	private static ScheduledExecutorService exportExecutor = null;
+
+	private static IMetricsExporter exporter = null;
+
+	/**
+	 * traces the stages of the requests, null if tracing is off
+	 */
+	private static volatile ITracer tracer = null;
+
+	/**
+	 * name the MXBean was registered with, null if it is not registered
+	 */
+	private static ObjectName objectName = null;
+
+	private CsrfGuardMetrics() {
+	}
+
+	/**
+	 * @param length
+	 * @return new counters
+	 */
+	private static StripedCounter[] counters(int length) {
+		StripedCounter[] counters = new StripedCounter[length];
+		for (int i = 0; i < length; i++) {
+			counters[i] = new StripedCounter();
+		}
+		return counters;
+	}
+
+	/**
+	 * @return the tracer, or null if tracing is off (check for null once per request or stage)
+	 */
+	public static ITracer tracer() {
+		return tracer;
+	}
+
+	/**
+	 * turn on tracing with a tracer, call once the configuration is loaded.  Does nothing if no tracer
+	 * is configured or one is already set
+	 * @param tracerClassName class of the ITracer, or blank for none
+	 */
+	public static synchronized void startTracer(String tracerClassName) {
+		if (tracer != null || CsrfGuardUtils.isBlank(tracerClassName)) {
+			return;
+		}
+		Class<?> tracerClass = CsrfGuardUtils.forName(tracerClassName.trim());
+		tracer = CsrfGuardUtils.newInstance(tracerClass.asSubclass(ITracer.class));
+	}
+
+	/**
+	 * a request went through the filter
+	 * @param latencyNanos time the filter took, including the rest of the chain
+	 */
+	public void requestFiltered(long latencyNanos) {
+		this.requestsFiltered.increment();
+		this.filterLatencyNanos.record(latencyNanos);
+	}
+
+	/**
+	 * a request went through the JavaScriptServlet
+	 * @param scriptResponse what it served
+	 * @param latencyNanos time the servlet took to generate and write it
+	 */
+	public void scriptServed(ScriptResponse scriptResponse, long latencyNanos) {
+		this.scriptResponses[scriptResponse.ordinal()].increment();
+		if (scriptResponse == ScriptResponse.JavaScript) {
+			this.javaScriptLatencyNanos.record(latencyNanos);
+		} else if (scriptResponse == ScriptResponse.PageTokens || scriptResponse == ScriptResponse.Token) {
+			this.tokenFetchLatencyNanos.record(latencyNanos);
+		}
+	}
+
+	/**
+	 * @param bypass why a request was let through without checking the token
+	 */
+	public void bypassed(Bypass bypass) {
+		this.bypasses[bypass.ordinal()].increment();
+	}
+
+	/**
+	 * @param mode a token was checked
+	 */
+	public void validated(ValidationMode mode) {
+		this.validations[mode.ordinal()].increment();
+	}
+
+	/**
+	 * @param cause why a request was rejected
+	 */
+	public void rejected(RejectionCause cause) {
+		this.rejections[cause.ordinal()].increment();
+	}
+
+	/**
+	 * @param count tokens generated
+	 */
+	public void tokensGenerated(int count) {
+		this.tokensGenerated.add(count);
+	}
+
+	/**
+	 * the tokens of a session were rotated
+	 */
+	public void rotated() {
+		this.rotations.increment();
+	}
+
+	/**
+	 * the config overlay files changed and were reloaded
+	 */
+	public void configReloaded() {
+		this.configReloads.increment();
+	}
+
+	/**
+	 * a request of a blocked client was rejected by the throttle
+	 */
+	public void throttled() {
+		this.requestsThrottled.increment();
+	}
+
+	/**
+	 * an async action was dropped since the queue was full
+	 */
+	public void asyncActionDiscarded() {
+		this.asyncActionsDiscarded.increment();
+	}
+
+	/**
+	 * @param size number of pages with a token in a session
+	 */
+	public void pageTokens(int size) {
+		this.pageTokensPerSession.record(size);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getRequestsFiltered()
+	 */
+	@Override
+	public long getRequestsFiltered() {
+		return this.requestsFiltered.sum();
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getRequestsBypassed()
+	 */
+	@Override
+	public Map<String, Long> getRequestsBypassed() {
+		return sums(Bypass.values(), this.bypasses);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getValidations()
+	 */
+	@Override
+	public Map<String, Long> getValidations() {
+		return sums(ValidationMode.values(), this.validations);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getRejections()
+	 */
+	@Override
+	public Map<String, Long> getRejections() {
+		return sums(RejectionCause.values(), this.rejections);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getTokensGenerated()
+	 */
+	@Override
+	public long getTokensGenerated() {
+		return this.tokensGenerated.sum();
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getRotations()
+	 */
+	@Override
+	public long getRotations() {
+		return this.rotations.sum();
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getConfigReloads()
+	 */
+	@Override
+	public long getConfigReloads() {
+		return this.configReloads.sum();
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getRequestsThrottled()
+	 */
+	@Override
+	public long getRequestsThrottled() {
+		return this.requestsThrottled.sum();
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getAsyncActionsDiscarded()
+	 */
+	@Override
+	public long getAsyncActionsDiscarded() {
+		return this.asyncActionsDiscarded.sum();
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getPageTokensPerSession()
+	 */
+	@Override
+	public Map<String, Long> getPageTokensPerSession() {
+		return this.pageTokensPerSession.summary(1);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getFilterLatencyMicros()
+	 */
+	@Override
+	public Map<String, Long> getFilterLatencyMicros() {
+		return this.filterLatencyNanos.summary(1000);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getScriptResponses()
+	 */
+	@Override
+	public Map<String, Long> getScriptResponses() {
+		return sums(ScriptResponse.values(), this.scriptResponses);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getJavaScriptLatencyMicros()
+	 */
+	@Override
+	public Map<String, Long> getJavaScriptLatencyMicros() {
+		return this.javaScriptLatencyNanos.summary(1000);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getTokenFetchLatencyMicros()
+	 */
+	@Override
+	public Map<String, Long> getTokenFetchLatencyMicros() {
+		return this.tokenFetchLatencyNanos.summary(1000);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#getMetrics()
+	 */
+	@Override
+	public Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new LinkedHashMap<String, Long>();
+		metrics.put("requests.filtered", getRequestsFiltered());
+		putAll(metrics, "requests.bypassed.", getRequestsBypassed());
+		putAll(metrics, "validations.", getValidations());
+		putAll(metrics, "rejections.", getRejections());
+		metrics.put("requests.throttled", getRequestsThrottled());
+		metrics.put("tokens.generated", getTokensGenerated());
+		metrics.put("tokens.rotations", getRotations());
+		metrics.put("config.reloads", getConfigReloads());
+		metrics.put("asyncActions.discarded", getAsyncActionsDiscarded());
+		putAll(metrics, "pageTokensPerSession.", getPageTokensPerSession());
+		putAll(metrics, "filter.latencyMicros.", getFilterLatencyMicros());
+		putAll(metrics, "script.responses.", getScriptResponses());
+		putAll(metrics, "script.javaScript.latencyMicros.", getJavaScriptLatencyMicros());
+		putAll(metrics, "script.tokenFetch.latencyMicros.", getTokenFetchLatencyMicros());
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.CsrfGuardMetricsMXBean#dumpStages()
+	 */
+	@Override
+	public String dumpStages() {
+		ITracer theTracer = tracer;
+		if (theTracer == null) {
+			return "Tracing is off, set org.owasp.csrfguard.Tracer to e.g. " + HistogramTracer.class.getName();
+		}
+		if (theTracer instanceof HistogramTracer) {
+			return ((HistogramTracer) theTracer).dump();
+		}
+		return "Tracer " + theTracer.getClass().getName() + " does not keep the stage latencies";
+	}
+
+	/**
+	 * @param metrics
+	 * @param prefix
+	 * @param values
+	 */
+	private static void putAll(Map<String, Long> metrics, String prefix, Map<String, Long> values) {
+		for (Map.Entry<String, Long> entry : values.entrySet()) {
+			metrics.put(prefix + entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * @param names enum values, the keys are their names in lower camel case
+	 * @param counters by ordinal
+	 * @return the sums by name
+	 */
+	private static Map<String, Long> sums(Enum<?>[] names, StripedCounter[] counters) {
+		Map<String, Long> sums = new LinkedHashMap<String, Long>();
+		for (Enum<?> name : names) {
+			String key = Character.toLowerCase(name.name().charAt(0)) + name.name().substring(1);
+			sums.put(key, counters[name.ordinal()].sum());
+		}
+		return sums;
+	}
+
+	/**
+	 * register the MXBean with the platform MBean server, if it is not registered yet
+	 * @param contextPath of the webapp, so several webapps can each register theirs
+	 */
+	public static synchronized void registerMBean(String contextPath) {
+		if (objectName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName("org.owasp.csrfguard:type=Metrics,context=" 
+					+ ObjectName.quote(CsrfGuardUtils.isBlank(contextPath) ? "/" : contextPath));
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			if (!mBeanServer.isRegistered(name)) {
+				mBeanServer.registerMBean(instance, name);
+				objectName = name;
+			}
+		} catch (Exception e) {
+			//metrics are not worth failing the webapp for
+			CsrfGuard.getInstance().getLogger().log(LogLevel.Warning, e);
+		}
+	}
+
+	/**
+	 * export the metrics periodically, call once the configuration is loaded.  Does nothing if there
+	 * is no exporter configured or it is already running
+	 * @param exporterClassName class of the IMetricsExporter, or blank for none
+	 * @param intervalSeconds seconds between exports
+	 */
+	public static synchronized void startExporter(String exporterClassName, int intervalSeconds) {
+		if (exportExecutor != null || CsrfGuardUtils.isBlank(exporterClassName)) {
+			return;
+		}
+		Class<?> exporterClass = CsrfGuardUtils.forName(exporterClassName.trim());
+		exporter = CsrfGuardUtils.newInstance(exporterClass.asSubclass(IMetricsExporter.class));
+		exportExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "CsrfGuard metrics exporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final IMetricsExporter theExporter = exporter;
+		long interval = Math.max(intervalSeconds, 1);
+		exportExecutor.scheduleWithFixedDelay(new Runnable() {
+
+			public void run() {
+				export(theExporter);
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param theExporter
+	 */
+	private static void export(IMetricsExporter theExporter) {
+		try {
+			theExporter.export(instance.getMetrics());
+		} catch (RuntimeException re) {
+			//keep exporting next time
+			CsrfGuard.getInstance().getLogger().log(LogLevel.Error, re);
+		}
+	}
+
+	/**
+	 * stop the exporter (after a last export) and tracing, and unregister the MXBean, e.g. when the webapp stops
+	 */
+	public static synchronized void shutdown() {
+		tracer = null;
+		if (exportExecutor != null) {
+			exportExecutor.shutdownNow();
+			export(exporter);
+			exportExecutor = null;
+			exporter = null;
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				CsrfGuard.getInstance().getLogger().log(LogLevel.Warning, e);
+			}
+			objectName = null;
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the CsrfGuard metrics, registered as org.owasp.csrfguard:type=Metrics,context=(context path).
+ * The counters are totals since the webapp started, latencies are in micros.
+ */
+public interface CsrfGuardMetricsMXBean {
+
+	/**
+	 * @return http requests which went through the filter
+	 */
+	long getRequestsFiltered();
+
+	/**
+	 * @return requests let through without validating a token, by reason
+	 */
+	Map<String, Long> getRequestsBypassed();
+
+	/**
+	 * @return token validations, by mode (session, pageToken, ajax)
+	 */
+	Map<String, Long> getValidations();
+
+	/**
+	 * @return requests rejected, by cause
+	 */
+	Map<String, Long> getRejections();
+
+	/**
+	 * @return session and page tokens generated
+	 */
+	long getTokensGenerated();
+
+	/**
+	 * @return token rotations, by the Rotate setting and by the Rotate action
+	 */
+	long getRotations();
+
+	/**
+	 * @return times the config overlay files changed and were reloaded
+	 */
+	long getConfigReloads();
+
+	/**
+	 * @return requests of blocked clients rejected by the throttle
+	 */
+	long getRequestsThrottled();
+
+	/**
+	 * @return async actions dropped since their queue was full
+	 */
+	long getAsyncActionsDiscarded();
+
+	/**
+	 * @return number of pages with a token in a session (when tokens are created): count, mean, percentiles and max
+	 */
+	Map<String, Long> getPageTokensPerSession();
+
+	/**
+	 * @return time the filter took per request in micros (including the rest of the chain): count, mean, percentiles and max
+	 */
+	Map<String, Long> getFilterLatencyMicros();
+
+	/**
+	 * @return requests of the JavaScriptServlet, by what it served (javascript, page tokens, token, 404)
+	 */
+	Map<String, Long> getScriptResponses();
+
+	/**
+	 * @return time the JavaScriptServlet took to generate and write the javascript in micros: count, mean, percentiles and max
+	 */
+	Map<String, Long> getJavaScriptLatencyMicros();
+
+	/**
+	 * @return time the JavaScriptServlet took to write the page tokens or the token fetched by the javascript in micros: 
+	 * count, mean, percentiles and max
+	 */
+	Map<String, Long> getTokenFetchLatencyMicros();
+
+	/**
+	 * @return all the metrics by name, as given to the exporter
+	 */
+	Map<String, Long> getMetrics();
+
+	/**
+	 * @return the latency of each stage of the request pipeline if tracing is on with a HistogramTracer
+	 */
+	String dumpStages();
+
+}
@@ -0,0 +1,182 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative longs (e.g. nanos) in log-linear buckets like an HDR histogram:
+ * values below 8 have their own bucket, and each power of two above is split into 8 buckets,
+ * so a bucket is at most 12.5% wide relative to its values.  Recording is an increment of
+ * one bucket plus the striped count and sum, there is no lock and no allocation.
+ * Percentiles are the upper bound of the bucket they fall in (capped at the max).
+ */
+public final class Histogram {
+
+	/**
+	 * buckets per power of two, as a number of bits
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * enough buckets for Long.MAX_VALUE
+	 */
+	private static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final StripedCounter count = new StripedCounter();
+
+	private final StripedCounter sum = new StripedCounter();
+
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * @param value to record, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		this.buckets.incrementAndGet(bucketIndex(value));
+		this.count.increment();
+		this.sum.add(value);
+
+		long currentMax = this.max.get();
+		while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+			currentMax = this.max.get();
+		}
+	}
+
+	/**
+	 * @return number of values recorded
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * @return total of the values recorded
+	 */
+	public long getSum() {
+		return this.sum.sum();
+	}
+
+	/**
+	 * @return largest value recorded, 0 if none
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * @return average of the values recorded, 0 if none
+	 */
+	public long getMean() {
+		long theCount = getCount();
+		return theCount == 0 ? 0 : getSum() / theCount;
+	}
+
+	/**
+	 * @param percentile e.g. 99.9
+	 * @return value which the percentile of the recorded values is at or below, 0 if none
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = this.buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * total);
+		rank = Math.max(rank, 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * @param divisor to scale the values by, e.g. 1000 to report nanos in micros
+	 * @return count, mean, p50, p90, p99, p999 and max
+	 */
+	public Map<String, Long> summary(long divisor) {
+		Map<String, Long> summary = new LinkedHashMap<String, Long>();
+		summary.put("count", getCount());
+		summary.put("mean", getMean() / divisor);
+		summary.put("p50", getValueAtPercentile(50) / divisor);
+		summary.put("p90", getValueAtPercentile(90) / divisor);
+		summary.put("p99", getValueAtPercentile(99) / divisor);
+		summary.put("p999", getValueAtPercentile(99.9) / divisor);
+		summary.put("max", getMax() / divisor);
+		return summary;
+	}
+
+	/**
+	 * @param value non-negative
+	 * @return the bucket of the value
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @param index of a bucket
+	 * @return the largest value in the bucket
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+		//the last bucket would overflow
+		return lowerBound + ((1L << shift) - 1) < lowerBound ? Long.MAX_VALUE : lowerBound + ((1L << shift) - 1);
+	}
+
+}
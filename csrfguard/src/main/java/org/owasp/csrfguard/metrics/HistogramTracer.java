@@ -0,0 +1,92 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.metrics;
+
+import java.util.Map;
+
+/**
+ * Tracer which records the nanos of each stage in a histogram per stage.
+ * The breakdown is shown by the dumpStages operation of the metrics MXBean.
+ */
+public class HistogramTracer implements ITracer {
+
+	private final Histogram[] histograms = new Histogram[Stage.values().length];
+
+	public HistogramTracer() {
+		for (int i = 0; i < this.histograms.length; i++) {
+			this.histograms[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.ITracer#start(org.owasp.csrfguard.metrics.ITracer.Stage)
+	 */
+	@Override
+	public long start(Stage stage) {
+		return System.nanoTime();
+	}
+
+	/**
+	 * @see org.owasp.csrfguard.metrics.ITracer#end(org.owasp.csrfguard.metrics.ITracer.Stage, long)
+	 */
+	@Override
+	public void end(Stage stage, long start) {
+		this.histograms[stage.ordinal()].record(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param stage
+	 * @return the nanos of the stage
+	 */
+	public Histogram getHistogram(Stage stage) {
+		return this.histograms[stage.ordinal()];
+	}
+
+	/**
+	 * @return a table of the stages with their count, mean, percentiles and max in micros
+	 */
+	public String dump() {
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("%-18s%12s%10s%10s%10s%10s%10s%10s%n", 
+				"stage (micros)", "count", "mean", "p50", "p90", "p99", "p999", "max"));
+		for (Stage stage : Stage.values()) {
+			Map<String, Long> summary = getHistogram(stage).summary(1000);
+			result.append(String.format("%-18s%12d%10d%10d%10d%10d%10d%10d%n", stage.name(), 
+					summary.get("count"), summary.get("mean"), summary.get("p50"), summary.get("p90"), 
+					summary.get("p99"), summary.get("p999"), summary.get("max")));
+		}
+		return result.toString();
+	}
+
+	@Override
+	public String toString() {
+		return dump();
+	}
+
+}
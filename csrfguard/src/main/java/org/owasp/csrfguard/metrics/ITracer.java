@@ -0,0 +1,76 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.metrics;
+
+/**
+ * Callbacks around each stage of the request pipeline (CsrfGuardFilter.doFilter and
+ * CsrfGuard.isValidRequest), to see which stage latency comes from.  Tracing is off unless
+ * org.owasp.csrfguard.Tracer is set to the class of an implementation (which needs a public
+ * no-argument constructor), e.g. HistogramTracer.  When it is off each stage costs one null check.
+ * <p />
+ * The tracer is called from all request threads at once, so it must be thread safe and fast.
+ */
+public interface ITracer {
+
+	/**
+	 * stages of the request pipeline
+	 */
+	public static enum Stage {
+		/** getting the session and the session token */
+		Session,
+		/** matching the uri and method against the protected and unprotected pages */
+		UriMatch,
+		/** checking the token of the request */
+		TokenVerification,
+		/** running the actions of a rejected request */
+		Actions,
+		/** rotating the tokens after a request (Rotate setting) */
+		Rotation,
+		/** the rest of the filter chain and the servlet, i.e. the application */
+		Chain,
+		/** creating the session and page tokens after a request */
+		UpdateTokens
+	}
+
+	/**
+	 * a stage is starting
+	 * @param stage
+	 * @return a value to pass to end(), e.g. System.nanoTime()
+	 */
+	long start(Stage stage);
+
+	/**
+	 * a stage ended.  The stages which can run application code or throw in normal operation
+	 * (TokenVerification, Actions, Chain) are ended in a finally block
+	 * @param stage
+	 * @param start what start() returned
+	 */
+	void end(Stage stage, long start);
+
+}
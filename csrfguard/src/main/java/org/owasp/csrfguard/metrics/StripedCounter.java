@@ -0,0 +1,105 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can increment without contending on one memory location:
+ * each thread adds to one of several cells (picked by thread id, each on its own cache line),
+ * and reading the counter sums the cells.  Like java.util.concurrent.atomic.LongAdder which
+ * is not available in java 6.  The sum is not an atomic snapshot while it is being incremented.
+ */
+public final class StripedCounter {
+
+	/**
+	 * longs per cell, so cells are 64 bytes apart and are not on the same cache line
+	 */
+	private static final int PADDING = 8;
+
+	/**
+	 * number of cells, a power of two at least the number of processors
+	 */
+	private static final int STRIPES = stripes();
+
+	/**
+	 * @return a power of two at least the number of processors, max 64
+	 */
+	private static int stripes() {
+		int processors = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+		int stripes = 1;
+		while (stripes < processors) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * add one
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * @param delta amount to add
+	 */
+	public void add(long delta) {
+		this.cells.getAndAdd(cell(), delta);
+	}
+
+	/**
+	 * @return the total of the cells
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += this.cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return index of the cell of this thread
+	 */
+	private static int cell() {
+		long id = Thread.currentThread().getId();
+		//spread the sequential thread ids
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash ^ (hash >>> 16)) & (STRIPES - 1)) * PADDING;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+
+}
@@ -46,6 +46,8 @@ import javax.servlet.http.HttpSession;
 import org.owasp.csrfguard.CsrfGuard;
 import org.owasp.csrfguard.CsrfGuardServletContextListener;
 import org.owasp.csrfguard.log.LogLevel;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics.ScriptResponse;
 import org.owasp.csrfguard.util.CsrfGuardUtils;
 import org.owasp.csrfguard.util.Streams;
 import org.owasp.csrfguard.util.Strings;
@@ -97,6 +99,7 @@ public final class JavaScriptServlet extends HttpServlet {
 
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		long startNanos = System.nanoTime();
 		String refererHeader = request.getHeader("referer");
 		boolean hasError = false;
 		Pattern javascriptRefererPattern = CsrfGuard.getInstance().getJavascriptRefererPattern();
@@ -130,6 +133,8 @@ public final class JavaScriptServlet extends HttpServlet {
 			
 			writeJavaScript(request, response);
 		}
+		CsrfGuardMetrics.getInstance().scriptServed(hasError ? ScriptResponse.NotFound : ScriptResponse.JavaScript, 
+				System.nanoTime() - startNanos);
 	}
 
 	/**
@@ -146,18 +151,24 @@ public final class JavaScriptServlet extends HttpServlet {
 
 	@Override
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		long startNanos = System.nanoTime();
 		CsrfGuard csrfGuard = CsrfGuard.getInstance();
 		String isFetchCsrfToken = request.getHeader("FETCH-CSRF-TOKEN");
+		ScriptResponse scriptResponse;
 		
 		if (csrfGuard != null && isFetchCsrfToken != null){
 			fetchCsrfToken(request, response);
+			scriptResponse = ScriptResponse.Token;
 		} else {
 			if (csrfGuard != null && csrfGuard.isTokenPerPageEnabled()) {
 				writePageTokens(request, response);
+				scriptResponse = ScriptResponse.PageTokens;
 			} else {
 				response.sendError(404);
+				scriptResponse = ScriptResponse.NotFound;
 			}
 		}
+		CsrfGuardMetrics.getInstance().scriptServed(scriptResponse, System.nanoTime() - startNanos);
 	}
 
 	private void fetchCsrfToken(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -192,6 +203,11 @@ public final class JavaScriptServlet extends HttpServlet {
 		HttpSession session = request.getSession(true);
 		@SuppressWarnings("unchecked")
 		Map<String, String> pageTokens = (Map<String, String>) session.getAttribute(CsrfGuard.PAGE_TOKENS_KEY);
+
+		/** tokens rotated since they were created must be regenerated before they are written **/
+		if (pageTokens != null) {
+			CsrfGuard.getInstance().refreshPageTokens(pageTokens);
+		}
 		String pageTokensString = (pageTokens != null ? parsePageTokens(pageTokens) : Strings.EMPTY);
 
 		/** setup headers **/
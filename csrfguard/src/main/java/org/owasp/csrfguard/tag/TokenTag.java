@@ -30,6 +30,8 @@ package org.owasp.csrfguard.tag;
 
 import java.io.*;
 
+import javax.servlet.http.*;
+
 import org.owasp.csrfguard.*;
 
 public final class TokenTag extends AbstractUriTag {
@@ -42,11 +44,21 @@ public final class TokenTag extends AbstractUriTag {
 	 * @return the name value pair 
 	 */
 	public static String token(String uri) {
+		return token(CsrfGuardFilter.httpServletRequest(), uri);
+	}
+
+	/**
+	 * get a token name value pair separated by = (could be for a uri) for the given request
+	 * @param httpServletRequest
+	 * @param uri
+	 * @return the name value pair 
+	 */
+	public static String token(HttpServletRequest httpServletRequest, String uri) {
 	  
 		CsrfGuard csrfGuard = CsrfGuard.getInstance();
 		String tokenName = csrfGuard.getTokenName();
 
-		String tokenValue = TokenValueTag.tokenValue(uri);
+		String tokenValue = TokenValueTag.tokenValue(httpServletRequest, uri);
 
 		return tokenName + "=" + tokenValue;
 
@@ -55,9 +67,7 @@ public final class TokenTag extends AbstractUriTag {
 	@Override
 	public int doStartTag() {
 
-		String token = token(this.getUri());
-
-		String tokenNameValuePair = token(this.getUri());
+		String tokenNameValuePair = token((HttpServletRequest) pageContext.getRequest(), this.getUri());
 		try {
 			pageContext.getOut().write(tokenNameValuePair);
 		} catch (IOException e) {
@@ -45,13 +45,23 @@ public final class TokenValueTag extends AbstractUriTag {
 	 * @return the token value
 	 */
 	public static String tokenValue(String uri) {
+		return tokenValue(CsrfGuardFilter.httpServletRequest(), uri);
+	}
+
+	/**
+	 * get a token value (could be for a uri) for the given request, use this when
+	 * the page is rendered on a thread the CsrfGuardFilter did not run on (e.g. async)
+	 * @param httpServletRequest
+	 * @param uri
+	 * @return the token value
+	 */
+	public static String tokenValue(HttpServletRequest httpServletRequest, String uri) {
 		CsrfGuard csrfGuard = CsrfGuard.getInstance();
 
 		if (csrfGuard.isTokenPerPageEnabled() && (uri == null || "".equals(uri.trim()))) {
 			throw new IllegalStateException("must define 'uri' attribute when token per page is enabled");
 		}
 
-		HttpServletRequest httpServletRequest = CsrfGuardFilter.httpServletRequest();
 		String tokenValue = csrfGuard.getTokenValue(httpServletRequest, uri);
 
 		return tokenValue;
@@ -61,7 +71,7 @@ public final class TokenValueTag extends AbstractUriTag {
 	@Override
 	public int doStartTag() {
 
-		String tokenValue = tokenValue(this.getUri());
+		String tokenValue = tokenValue((HttpServletRequest) pageContext.getRequest(), this.getUri());
 
 		try {
 			pageContext.getOut().write(tokenValue);
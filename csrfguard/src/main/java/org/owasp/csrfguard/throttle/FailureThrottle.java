@@ -0,0 +1,222 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.throttle;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.owasp.csrfguard.CsrfGuardException;
+import org.owasp.csrfguard.action.Reject;
+
+/**
+ * Counts the rejected requests of each client (by remote address or session id) over a sliding window,
+ * and blocks a client for a while once it has more than MaxFailures, so the filter rejects its requests to
+ * protected pages with a cheap 429 response before the token work.  The counts are kept in fixed memory, see
+ * SlidingCountMinSketch, and at most MAX_BLOCKED clients are blocked at once.  Thread safe
+ */
+public final class FailureThrottle {
+
+	/**
+	 * what identifies a client
+	 */
+	public enum Key {
+
+		/** the ip address the request came from **/
+		RemoteAddr,
+
+		/** the id of the existing session of the request, requests without a valid session are not counted or blocked **/
+		SessionId
+	}
+
+	/**
+	 * max clients blocked at once, so the block list cannot grow without limit
+	 */
+	private static final int MAX_BLOCKED = 10000;
+
+	/**
+	 * cells per row of the sketch, 256KB in all
+	 */
+	private static final int SKETCH_WIDTH = 16384;
+
+	private final int maxFailures;
+
+	private final long blockMillis;
+
+	private final Key key;
+
+	private final SlidingCountMinSketch failures;
+
+	/**
+	 * blocked client to millis since 1970 when the block ends
+	 */
+	private final ConcurrentHashMap<String, Long> blocked = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * the response to blocked clients, built once
+	 */
+	private final Reject reject = new Reject();
+
+	/**
+	 * @param maxFailures rejected requests allowed in the window before the client is blocked
+	 * @param windowSeconds length of the sliding window
+	 * @param blockSeconds how long a client stays blocked
+	 * @param key what identifies a client
+	 */
+	public FailureThrottle(int maxFailures, int windowSeconds, int blockSeconds, Key key) {
+		this.maxFailures = Math.max(maxFailures, 1);
+		this.blockMillis = TimeUnit.SECONDS.toMillis(Math.max(blockSeconds, 1));
+		this.key = key;
+		this.failures = new SlidingCountMinSketch(SKETCH_WIDTH, TimeUnit.SECONDS.toNanos(Math.max(windowSeconds, 1)));
+		this.reject.setParameter("Code", "429");
+		this.reject.setParameter("Body", "Too Many Requests");
+		this.reject.init();
+	}
+
+	/**
+	 * @param request
+	 * @return the client key of the request, or null if it has none
+	 */
+	private String key(HttpServletRequest request) {
+		if (this.key == Key.SessionId) {
+			/** not the requested session id, the client could send a new one with each request **/
+			if (!request.isRequestedSessionIdValid()) {
+				return null;
+			}
+			HttpSession session = request.getSession(false);
+			return session == null ? null : session.getId();
+		}
+		return String.valueOf(request.getRemoteAddr());
+	}
+
+	/**
+	 * @param request
+	 * @return true if the client of the request is blocked
+	 */
+	public boolean isBlocked(HttpServletRequest request) {
+		if (this.blocked.isEmpty()) {
+			return false;
+		}
+		String clientKey = key(request);
+		if (clientKey == null) {
+			return false;
+		}
+		Long blockedUntil = this.blocked.get(clientKey);
+		if (blockedUntil == null) {
+			return false;
+		}
+		if (blockedUntil.longValue() > System.currentTimeMillis()) {
+			return true;
+		}
+		this.blocked.remove(clientKey, blockedUntil);
+		return false;
+	}
+
+	/**
+	 * count a rejected request, and block the client if it has too many
+	 * @param request
+	 */
+	public void failed(HttpServletRequest request) {
+		String clientKey = key(request);
+		if (clientKey == null || this.failures.add(clientKey) <= this.maxFailures) {
+			return;
+		}
+		if (this.blocked.size() >= MAX_BLOCKED) {
+			removeExpired();
+			if (this.blocked.size() >= MAX_BLOCKED) {
+				return;
+			}
+		}
+		this.blocked.put(clientKey, System.currentTimeMillis() + this.blockMillis);
+	}
+
+	/**
+	 * send the response for a blocked client
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	public void reject(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try {
+			this.reject.execute(request, response, null, null);
+		} catch (CsrfGuardException cge) {
+			throw new IOException(cge.getLocalizedMessage(), cge);
+		}
+	}
+
+	/**
+	 * @return the blocked clients and when each block ends, sorted by client
+	 */
+	public Map<String, Date> getBlocked() {
+		removeExpired();
+		Map<String, Date> result = new TreeMap<String, Date>();
+		for (Map.Entry<String, Long> entry : this.blocked.entrySet()) {
+			result.put(entry.getKey(), new Date(entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * @param clientKey ip address or session id
+	 * @return true if the client was blocked
+	 */
+	public boolean unblock(String clientKey) {
+		return this.blocked.remove(clientKey) != null;
+	}
+
+	/**
+	 * unblock all the clients and forget their failures
+	 */
+	public void clear() {
+		this.blocked.clear();
+		this.failures.clear();
+	}
+
+	/**
+	 * drop the blocks which ended
+	 */
+	private void removeExpired() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Long>> iterator = this.blocked.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getValue().longValue() <= now) {
+				iterator.remove();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.throttle;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate count of events per key over a sliding window, in fixed memory however many keys there are.
+ * Each key is counted in one cell of each row of a count-min sketch, and its count is the minimum of its cells,
+ * which may be too high (keys share cells) but never too low.  Cells are only raised as far as the new count of the
+ * key (conservative update), which keeps the counts of the other keys sharing them much closer.  The window is approximated with the sketch of the
+ * current window plus the sketch of the previous window weighted by how much of it is still in the sliding window.
+ * Thread safe
+ */
+final class SlidingCountMinSketch {
+
+	/**
+	 * rows, each with its own hash
+	 */
+	private static final int DEPTH = 4;
+
+	/**
+	 * cells per row, a power of 2
+	 */
+	private final int width;
+
+	/**
+	 * per row, so the rows hash the keys independently (keys with the same String.hashCode() land in different
+	 * cells), and random so a client cannot easily pick keys which share the cells of another key
+	 */
+	private final int[] seeds = new int[DEPTH];
+
+	private final long windowNanos;
+
+	/**
+	 * counts in the current window, DEPTH rows of width cells
+	 */
+	private volatile AtomicIntegerArray current;
+
+	/**
+	 * counts in the previous window
+	 */
+	private volatile AtomicIntegerArray previous;
+
+	private volatile long windowStartNanos;
+
+	/**
+	 * @param width cells per row, rounded up to a power of 2
+	 * @param windowNanos length of the sliding window
+	 */
+	SlidingCountMinSketch(int width, long windowNanos) {
+		int theWidth = 1;
+		while (theWidth < width) {
+			theWidth <<= 1;
+		}
+		this.width = theWidth;
+		this.windowNanos = Math.max(windowNanos, 1);
+		Random random = new SecureRandom();
+		for (int i = 0; i < DEPTH; i++) {
+			this.seeds[i] = random.nextInt();
+		}
+		this.current = new AtomicIntegerArray(DEPTH * this.width);
+		this.previous = new AtomicIntegerArray(DEPTH * this.width);
+		this.windowStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * count an event
+	 * @param key
+	 * @return the count of the key in the sliding window, including this event
+	 */
+	int add(String key) {
+		long elapsed = slide();
+		AtomicIntegerArray theCurrent = this.current;
+		AtomicIntegerArray thePrevious = this.previous;
+		int[] indexes = indexes(key);
+		int currentCount = Integer.MAX_VALUE;
+		int previousCount = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = indexes[i];
+			currentCount = Math.min(currentCount, theCurrent.get(index));
+			previousCount = Math.min(previousCount, thePrevious.get(index));
+		}
+		currentCount++;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = indexes[i];
+			int value = theCurrent.get(index);
+			while (value < currentCount && !theCurrent.compareAndSet(index, value, currentCount)) {
+				value = theCurrent.get(index);
+			}
+		}
+		return estimate(currentCount, previousCount, elapsed);
+	}
+
+	/**
+	 * @param key
+	 * @return the count of the key in the sliding window
+	 */
+	int count(String key) {
+		long elapsed = slide();
+		AtomicIntegerArray theCurrent = this.current;
+		AtomicIntegerArray thePrevious = this.previous;
+		int[] indexes = indexes(key);
+		int currentCount = Integer.MAX_VALUE;
+		int previousCount = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = indexes[i];
+			currentCount = Math.min(currentCount, theCurrent.get(index));
+			previousCount = Math.min(previousCount, thePrevious.get(index));
+		}
+		return estimate(currentCount, previousCount, elapsed);
+	}
+
+	/**
+	 * forget all the counts
+	 */
+	synchronized void clear() {
+		this.previous = new AtomicIntegerArray(DEPTH * this.width);
+		this.current = new AtomicIntegerArray(DEPTH * this.width);
+		this.windowStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * @param currentCount
+	 * @param previousCount
+	 * @param elapsed nanos since the current window started
+	 * @return the current count plus the part of the previous window still in the sliding window
+	 */
+	private int estimate(int currentCount, int previousCount, long elapsed) {
+		double previousWeight = (double)(this.windowNanos - Math.min(elapsed, this.windowNanos)) / this.windowNanos;
+		return currentCount + (int)(previousCount * previousWeight);
+	}
+
+	/**
+	 * start a new window if the current one is over
+	 * @return nanos since the current window started
+	 */
+	private long slide() {
+		long elapsed = System.nanoTime() - this.windowStartNanos;
+		if (elapsed < this.windowNanos) {
+			return elapsed;
+		}
+		synchronized (this) {
+			long now = System.nanoTime();
+			elapsed = now - this.windowStartNanos;
+			if (elapsed >= this.windowNanos) {
+				/** nothing of the current window is left in the sliding window after two windows **/
+				this.previous = elapsed < 2 * this.windowNanos ? this.current : new AtomicIntegerArray(DEPTH * this.width);
+				this.current = new AtomicIntegerArray(DEPTH * this.width);
+				this.windowStartNanos = now - (elapsed % this.windowNanos);
+				elapsed = elapsed % this.windowNanos;
+			}
+			return elapsed;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return index of the cell of the key in each row
+	 */
+	private int[] indexes(String key) {
+		int[] indexes = new int[DEPTH];
+		for (int row = 0; row < DEPTH; row++) {
+			indexes[row] = (row * this.width) + (murmur3(key, this.seeds[row]) & (this.width - 1));
+		}
+		return indexes;
+	}
+
+	/**
+	 * murmur3 32 bit hash of the chars of the key, two chars per block
+	 * @param key
+	 * @param seed
+	 * @return the hash
+	 */
+	private static int murmur3(String key, int seed) {
+		int h = seed;
+		int length = key.length();
+		int i = 0;
+		for (; i + 1 < length; i += 2) {
+			h ^= mixBlock(key.charAt(i) | (key.charAt(i + 1) << 16));
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		if (i < length) {
+			h ^= mixBlock(key.charAt(i));
+		}
+		h ^= 2 * length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * @param block
+	 * @return the block mixed before it is added to the hash
+	 */
+	private static int mixBlock(int block) {
+		int k = block * 0xcc9e2d51;
+		k = Integer.rotateLeft(k, 15);
+		return k * 0x1b873593;
+	}
+
+}
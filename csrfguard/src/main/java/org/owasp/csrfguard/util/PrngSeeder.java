@@ -0,0 +1,140 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+
+/**
+ * Creates and seeds the token PRNG before it is handed out, so the first token does not
+ * wait for the generator to seed itself from system entropy (which can block for seconds
+ * on a freshly started machine or container).  The seed is read from the non-blocking
+ * native source (/dev/urandom) when the JVM has one.  Also keeps whether a PRNG has been
+ * seeded and how long that took.
+ */
+public final class PrngSeeder {
+
+	/**
+	 * bytes of seed, 256 bits
+	 */
+	private static final int SEED_LENGTH = 32;
+
+	/**
+	 * non blocking native source of seed bytes
+	 */
+	private static final String NON_BLOCKING_SEED_ALGORITHM = "NativePRNGNonBlocking";
+
+	/**
+	 * true once a PRNG has been created and seeded
+	 */
+	private static volatile boolean ready = false;
+
+	/**
+	 * millis the last seeding took, -1 if none yet
+	 */
+	private static volatile long seedingMillis = -1;
+
+	/**
+	 * true if the last seeding used the non blocking source
+	 */
+	private static volatile boolean seededNonBlocking = false;
+
+	private PrngSeeder() {
+		/** enforce use of static methods **/
+	}
+
+	/**
+	 * create the PRNG and seed it
+	 * @param algorithm e.g. SHA1PRNG
+	 * @param provider e.g. SUN
+	 * @param nonBlockingSeed true to seed from the non blocking native source if there is one, 
+	 * false to let the PRNG seed itself
+	 * @return the seeded PRNG
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 */
+	public static SecureRandom newSeededPrng(String algorithm, String provider, boolean nonBlockingSeed) 
+			throws NoSuchAlgorithmException, NoSuchProviderException {
+		long start = System.nanoTime();
+		
+		SecureRandom prng = SecureRandom.getInstance(algorithm, provider);
+		
+		byte[] seed = nonBlockingSeed ? nonBlockingSeed() : null;
+		if (seed != null) {
+			//set before the first use, so e.g. SHA1PRNG does not seed itself
+			prng.setSeed(seed);
+		}
+		
+		//seeds it now if it was not seeded above
+		prng.nextBytes(new byte[1]);
+		
+		seedingMillis = (System.nanoTime() - start) / 1000000;
+		seededNonBlocking = seed != null;
+		ready = true;
+		return prng;
+	}
+
+	/**
+	 * @return seed bytes from the non blocking native source, or null if the JVM does not have one
+	 */
+	private static byte[] nonBlockingSeed() {
+		try {
+			SecureRandom source = SecureRandom.getInstance(NON_BLOCKING_SEED_ALGORITHM);
+			byte[] seed = new byte[SEED_LENGTH];
+			source.nextBytes(seed);
+			return seed;
+		} catch (NoSuchAlgorithmException nsae) {
+			//e.g. windows or older JVMs
+			return null;
+		}
+	}
+
+	/**
+	 * @return true once a PRNG has been created and seeded
+	 */
+	public static boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * @return millis the last seeding took, -1 if none yet
+	 */
+	public static long getSeedingMillis() {
+		return seedingMillis;
+	}
+
+	/**
+	 * @return true if the last seeding used the non blocking native source
+	 */
+	public static boolean isSeededNonBlocking() {
+		return seededNonBlocking;
+	}
+
+}
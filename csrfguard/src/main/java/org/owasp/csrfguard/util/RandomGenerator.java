@@ -31,6 +31,9 @@ package org.owasp.csrfguard.util;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import org.owasp.csrfguard.metrics.CsrfGuardMetrics;
 
 public final class RandomGenerator {
 
@@ -39,6 +42,12 @@ public final class RandomGenerator {
 			'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', '0', '1', '2', '3', '4',
 			'5', '6', '7', '8', '9' };
 
+	/**
+	 * random bytes at or above this value are discarded so that every character
+	 * of the charset is equally likely when mapping a byte with modulo
+	 */
+	private final static int UNBIASED_BYTE_LIMIT = 256 - (256 % CHARSET.length);
+
 	private RandomGenerator() {
 		/**
 		 * Intentionally blank to force static usage
@@ -55,6 +64,7 @@ public final class RandomGenerator {
 	}
 
 	public static String generateRandomId(SecureRandom sr, int len) {
+		CsrfGuardMetrics.getInstance().tokensGenerated(1);
 		StringBuilder sb = new StringBuilder();
 
 		for (int i = 1; i < len + 1; i++) {
@@ -69,5 +79,80 @@ public final class RandomGenerator {
 
 		return sb.toString();
 	}
+
+	/**
+	 * generate several random ids of the same length.  All the randomness is pulled from
+	 * the PRNG with one call into one buffer, so this is much cheaper than calling
+	 * generateRandomId() in a loop (which locks the PRNG once per character)
+	 * @param sr the PRNG
+	 * @param len number of characters in each id (not counting dashes)
+	 * @param count number of ids to generate
+	 * @return the ids, never null
+	 */
+	public static String[] generateRandomIds(SecureRandom sr, int len, int count) {
+		String[] result = new String[Math.max(count, 0)];
+
+		if (count <= 0 || len <= 0) {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = Strings.EMPTY;
+			}
+			return result;
+		}
+
+		/** a few bytes of slack since some bytes are discarded to avoid bias **/
+		CsrfGuardMetrics.getInstance().tokensGenerated(count);
+		int needed = len * count;
+		byte[] buffer = new byte[needed + (needed / 32) + 16];
+		sr.nextBytes(buffer);
+		int position = 0;
+
+		char[] id = new char[len + ((len - 1) / 4)];
+
+		for (int t = 0; t < count; t++) {
+			int length = 0;
+
+			for (int i = 1; i < len + 1; i++) {
+				int value;
+
+				do {
+					if (position == buffer.length) {
+						sr.nextBytes(buffer);
+						position = 0;
+					}
+					value = buffer[position++] & 0xFF;
+				} while (value >= UNBIASED_BYTE_LIMIT);
+
+				id[length++] = CHARSET[value % CHARSET.length];
+
+				if ((i % 4) == 0 && i < len) {
+					id[length++] = '-';
+				}
+			}
+
+			result[t] = new String(id, 0, length);
+		}
+
+		return result;
+	}
+
+	/**
+	 * replace the value of every entry in the map with a new random id, in place (the keys
+	 * are not changed).  Uses one PRNG call for all the entries, see generateRandomIds()
+	 * @param sr the PRNG
+	 * @param len number of characters in each id (not counting dashes)
+	 * @param tokens map of key to token, e.g. the page tokens of a session
+	 */
+	public static void regenerateRandomIds(SecureRandom sr, int len, Map<String, String> tokens) {
+		if (tokens == null || tokens.isEmpty()) {
+			return;
+		}
+
+		String[] ids = generateRandomIds(sr, len, tokens.size());
+		int index = 0;
+
+		for (Map.Entry<String, String> entry : tokens.entrySet()) {
+			entry.setValue(ids[index++]);
+		}
+	}
 	
 }
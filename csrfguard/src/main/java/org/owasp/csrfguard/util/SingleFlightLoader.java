@@ -0,0 +1,134 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs at most one load at a time: the first caller runs the loader on its own
+ * thread, concurrent callers wait for that result instead of loading again.
+ * No lock is held while the loader runs (it usually reads config files), and
+ * waiting threads park rather than block on a monitor, so virtual threads are
+ * not pinned to their carrier.  A load started by the loader itself (e.g. config
+ * code which calls CsrfGuard.getInstance()) runs the loader again on the same
+ * thread, like the synchronized block this replaces, instead of waiting for itself.
+ * @param <T> type that is loaded
+ */
+public final class SingleFlightLoader<T> {
+
+	/**
+	 * the load that is running now, null if none
+	 */
+	private final AtomicReference<FutureTask<T>> inFlight = new AtomicReference<FutureTask<T>>();
+
+	/**
+	 * the thread running the load in flight, null if none
+	 */
+	private volatile Thread loadingThread = null;
+
+	/**
+	 * run the loader, or wait for the load another thread is running
+	 * @param loader
+	 * @return the loaded value
+	 */
+	public T load(Callable<T> loader) {
+		while (true) {
+			FutureTask<T> task = this.inFlight.get();
+			
+			if (task != null) {
+				//the loader needs a load, waiting for the task would wait for this thread
+				if (this.loadingThread == Thread.currentThread()) {
+					return call(loader);
+				}
+				return result(task);
+			}
+			
+			FutureTask<T> newTask = new FutureTask<T>(loader);
+			if (this.inFlight.compareAndSet(null, newTask)) {
+				this.loadingThread = Thread.currentThread();
+				try {
+					newTask.run();
+				} finally {
+					this.loadingThread = null;
+					this.inFlight.compareAndSet(newTask, null);
+				}
+				return result(newTask);
+			}
+			//another thread started a load, loop and wait for it
+		}
+	}
+
+	/**
+	 * @param loader
+	 * @return what the loader returns, checked exceptions are wrapped
+	 */
+	private static <T> T call(Callable<T> loader) {
+		try {
+			return loader.call();
+		} catch (RuntimeException re) {
+			throw re;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param task
+	 * @return the result of the task, rethrowing what it threw
+	 */
+	private static <T> T result(FutureTask<T> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.util;
+
+/**
+ * token bucket rate limiter: holds up to capacity tokens, refilled at a steady rate,
+ * and each event which should be allowed takes a token.  Thread safe
+ */
+public final class TokenBucket {
+
+	/**
+	 * max tokens the bucket holds, i.e. the burst
+	 */
+	private final double capacity;
+
+	/**
+	 * tokens added per nano second
+	 */
+	private final double tokensPerNano;
+
+	/**
+	 * tokens in the bucket as of lastRefillNanos
+	 */
+	private double tokens;
+
+	/**
+	 * when the tokens were last counted
+	 */
+	private long lastRefillNanos;
+
+	/**
+	 * @param tokensPerSecond steady rate, must be positive
+	 * @param capacity max burst, at least 1
+	 */
+	public TokenBucket(double tokensPerSecond, int capacity) {
+		if (tokensPerSecond <= 0) {
+			throw new IllegalArgumentException("tokensPerSecond must be positive: " + tokensPerSecond);
+		}
+		this.capacity = Math.max(capacity, 1);
+		this.tokensPerNano = tokensPerSecond / 1000000000d;
+		this.tokens = this.capacity;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return true if a token was taken, false if the rate is exceeded
+	 */
+	public synchronized boolean tryAcquire() {
+		long now = System.nanoTime();
+		this.tokens = Math.min(this.capacity, this.tokens + ((now - this.lastRefillNanos) * this.tokensPerNano));
+		this.lastRefillNanos = now;
+
+		if (this.tokens < 1) {
+			return false;
+		}
+		this.tokens--;
+		return true;
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.owasp.csrfguard.throttle.FailureThrottle;
+
+/**
+ * a blocked client is rejected only where its token would be checked
+ */
+public class CsrfGuardFilterThrottleTest {
+
+	@BeforeClass
+	public static void configure() {
+		Mocks.configure();
+	}
+
+	@After
+	public void unblock() {
+		CsrfGuard.getInstance().getFailureThrottle().clear();
+	}
+
+	@Test
+	public void blockedClientIsRejectedOnProtectedPages() throws Exception {
+		block();
+		AtomicInteger status = new AtomicInteger();
+		assertFalse(filter("/app/protect.html", status));
+		assertEquals(429, status.get());
+	}
+
+	@Test
+	public void blockedClientGetsUnprotectedPages() throws Exception {
+		block();
+		AtomicInteger status = new AtomicInteger();
+		assertTrue(filter("/app/index.html", status));
+		assertEquals(0, status.get());
+	}
+
+	/**
+	 * fail the requests of the mock address until it is blocked
+	 */
+	private static void block() {
+		FailureThrottle failureThrottle = CsrfGuard.getInstance().getFailureThrottle();
+		HttpServletRequest request = Mocks.request("/app/protect.html");
+		failureThrottle.failed(request);
+		failureThrottle.failed(request);
+		assertTrue(failureThrottle.isBlocked(request));
+	}
+
+	/**
+	 * @param uri
+	 * @param status gets the status set on the response
+	 * @return true if the request went down the chain
+	 * @throws Exception
+	 */
+	private static boolean filter(String uri, final AtomicInteger status) throws Exception {
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final ServletOutputStream outputStream = new ServletOutputStream() {
+
+			@Override
+			public void write(int b) {
+				body.write(b);
+			}
+		};
+		HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(CsrfGuardFilterThrottleTest.class.getClassLoader(), 
+				new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("setStatus".equals(method.getName())) {
+					status.set((Integer) args[0]);
+				} else if ("getOutputStream".equals(method.getName())) {
+					return outputStream;
+				} else if ("isCommitted".equals(method.getName())) {
+					return false;
+				}
+				return null;
+			}
+		});
+
+		final AtomicBoolean chained = new AtomicBoolean(false);
+		new CsrfGuardFilter().doFilter(Mocks.request(uri), response, new FilterChain() {
+
+			public void doFilter(ServletRequest request, ServletResponse chainResponse) {
+				chained.set(true);
+			}
+		});
+		if (status.get() == 429) {
+			assertEquals("Too Many Requests", body.toString("UTF-8"));
+		}
+		return chained.get();
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * the request must not be kept by the filter thread or by threads started while it runs
+ */
+public class CsrfGuardRequestContextTest {
+
+	@BeforeClass
+	public static void configure() {
+		Mocks.configure();
+	}
+
+	@Test
+	public void threadsStartedDuringTheRequestDoNotKeepIt() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final AtomicReference<HttpServletRequest> seenByPoolThread = new AtomicReference<HttpServletRequest>();
+		final AtomicReference<HttpServletRequest> seenByWrappedTask = new AtomicReference<HttpServletRequest>();
+		try {
+			WeakReference<HttpServletRequest> requestReference = filter(executor, seenByPoolThread, seenByWrappedTask);
+
+			assertNull("the pool thread inherited the request", seenByPoolThread.get());
+			assertNull("the filter thread still has the request", CsrfGuardRequestContext.current());
+
+			/** the pool thread created during the request is still alive, it must not reference the request **/
+			for (int i = 0; i < 50 && requestReference.get() != null; i++) {
+				System.gc();
+				Thread.sleep(20);
+			}
+			assertNull("the request was not garbage collected", requestReference.get());
+
+			/** the thread of the pool has no request either **/
+			Future<HttpServletRequest> current = executor.submit(new java.util.concurrent.Callable<HttpServletRequest>() {
+
+				public HttpServletRequest call() {
+					return CsrfGuardRequestContext.current();
+				}
+			});
+			assertNull(current.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void nestedDispatchKeepsTheOuterRequest() throws Exception {
+		final HttpServletRequest outer = Mocks.request("/app/outer.html");
+		final HttpServletRequest inner = Mocks.request("/app/inner.html");
+		final AtomicReference<HttpServletRequest> afterInclude = new AtomicReference<HttpServletRequest>();
+		final CsrfGuardFilter filter = new CsrfGuardFilter();
+
+		filter.doFilter(outer, Mocks.response(), new FilterChain() {
+
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				filter.doFilter(inner, response, new FilterChain() {
+
+					public void doFilter(ServletRequest innerRequest, ServletResponse innerResponse) {
+						assertSame(inner, CsrfGuardRequestContext.current());
+					}
+				});
+				afterInclude.set(CsrfGuardRequestContext.current());
+			}
+		});
+
+		assertSame(outer, afterInclude.get());
+		assertNull(CsrfGuardRequestContext.current());
+	}
+
+	/**
+	 * run a request through the filter, which starts the thread of the executor and
+	 * runs a wrapped task on it
+	 * @param executor
+	 * @param seenByPoolThread
+	 * @param seenByWrappedTask
+	 * @return a weak reference to the request, the only other references are gone when this returns
+	 * @throws Exception
+	 */
+	private static WeakReference<HttpServletRequest> filter(final ExecutorService executor, 
+			final AtomicReference<HttpServletRequest> seenByPoolThread, 
+			final AtomicReference<HttpServletRequest> seenByWrappedTask) throws Exception {
+		HttpServletRequest request = Mocks.request("/app/index.html");
+
+		new CsrfGuardFilter().doFilter(request, Mocks.response(), new FilterChain() {
+
+			public void doFilter(ServletRequest chainRequest, ServletResponse chainResponse) throws ServletException {
+				try {
+					/** the first task creates the thread of the pool, while the request is attached **/
+					executor.submit(new Runnable() {
+
+						public void run() {
+							seenByPoolThread.set(CsrfGuardRequestContext.current());
+						}
+					}).get();
+					executor.submit(CsrfGuardRequestContext.wrap(new Runnable() {
+
+						public void run() {
+							seenByWrappedTask.set(CsrfGuardRequestContext.current());
+						}
+					})).get();
+				} catch (Exception e) {
+					throw new ServletException(e);
+				}
+			}
+		});
+
+		assertSame("a wrapped task sees the request", request, seenByWrappedTask.get());
+		seenByWrappedTask.set(null);
+		return new WeakReference<HttpServletRequest>(request);
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Properties;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.owasp.csrfguard.config.PropertiesConfigurationProviderFactory;
+
+/**
+ * servlet api objects for the tests, answering from a map of method name to value, and
+ * the configuration the tests run with
+ */
+public final class Mocks {
+
+	private Mocks() {
+	}
+
+	/**
+	 * configure CsrfGuard once for the tests: session token only, the Empty action, nothing protected
+	 * except /app/protect.html
+	 */
+	public static synchronized void configure() {
+		Properties properties = new Properties();
+		properties.setProperty("org.owasp.csrfguard.configuration.provider.factory", PropertiesConfigurationProviderFactory.class.getName());
+		properties.setProperty("org.owasp.csrfguard.Logger", "org.owasp.csrfguard.log.JavaLogger");
+		properties.setProperty("org.owasp.csrfguard.Rotate", "false");
+		properties.setProperty("org.owasp.csrfguard.action.Empty", "org.owasp.csrfguard.action.Empty");
+		properties.setProperty("org.owasp.csrfguard.Protect", "true");
+		properties.setProperty("org.owasp.csrfguard.protected.Protect", "/app/protect.html");
+		properties.setProperty("org.owasp.csrfguard.Throttle", "true");
+		properties.setProperty("org.owasp.csrfguard.Throttle.MaxFailures", "1");
+		try {
+			CsrfGuard.load(properties);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param uri of a GET with an existing session
+	 * @return the request
+	 */
+	public static HttpServletRequest request(String uri) {
+		Map<String, Object> answers = new HashMap<String, Object>();
+		answers.put("getRequestURI", uri);
+		answers.put("getContextPath", "/app");
+		answers.put("getServletPath", uri.substring("/app".length()));
+		answers.put("getMethod", "GET");
+		answers.put("getRemoteAddr", "127.0.0.1");
+		answers.put("getDispatcherType", DispatcherType.REQUEST);
+		answers.put("getSession", session());
+		answers.put("getParameterNames", Collections.enumeration(Collections.<String>emptyList()));
+		return mock(HttpServletRequest.class, answers);
+	}
+
+	/**
+	 * @return a session which is not new, keeping its attributes in a map
+	 */
+	public static HttpSession session() {
+		final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+		return (HttpSession) Proxy.newProxyInstance(Mocks.class.getClassLoader(), new Class<?>[] { HttpSession.class }, new InvocationHandler() {
+
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getAttribute".equals(method.getName())) {
+					return attributes.get(args[0]);
+				}
+				if ("setAttribute".equals(method.getName())) {
+					if (args[1] == null) {
+						attributes.remove(args[0]);
+					} else {
+						attributes.put((String) args[0], args[1]);
+					}
+					return null;
+				}
+				if ("removeAttribute".equals(method.getName())) {
+					attributes.remove(args[0]);
+					return null;
+				}
+				if ("getId".equals(method.getName())) {
+					return "session" + System.identityHashCode(proxy);
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * @return a response which ignores what is written to it
+	 */
+	public static HttpServletResponse response() {
+		return mock(HttpServletResponse.class, new HashMap<String, Object>());
+	}
+
+	/**
+	 * @param type interface to implement
+	 * @param answers method name to return value, other methods return null, false or 0
+	 * @return the mock
+	 */
+	public static <T> T mock(Class<T> type, final Map<String, Object> answers) {
+		return type.cast(Proxy.newProxyInstance(Mocks.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (answers.containsKey(method.getName())) {
+					return answers.get(method.getName());
+				}
+				return defaultValue(proxy, method, args);
+			}
+		}));
+	}
+
+	/**
+	 * @return identity for equals and hashCode, otherwise null, false or 0
+	 */
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		if ("equals".equals(method.getName())) {
+			return proxy == args[0];
+		}
+		if ("hashCode".equals(method.getName())) {
+			return System.identityHashCode(proxy);
+		}
+		Class<?> returnType = method.getReturnType();
+		if (returnType == boolean.class) {
+			return false;
+		}
+		if (returnType == int.class) {
+			return 0;
+		}
+		if (returnType == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+}
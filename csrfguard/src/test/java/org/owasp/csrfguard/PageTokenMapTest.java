@@ -0,0 +1,158 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * the page tokens of a session are shared by its concurrent requests
+ */
+public class PageTokenMapTest {
+
+	private static final int THREADS = 8;
+
+	private static final int URIS = 50;
+
+	@BeforeClass
+	public static void configure() {
+		Mocks.configure();
+	}
+
+	@Test
+	public void rotatedTokensAreRegeneratedOnce() {
+		PageTokenMap pageTokens = new PageTokenMap();
+		pageTokens.put("/app/a.html", "a");
+		assertTrue(pageTokens.isCurrent("/app/a.html"));
+
+		pageTokens.rotate();
+		assertFalse(pageTokens.isCurrent("/app/a.html"));
+		assertEquals("[/app/a.html]", pageTokens.staleUris().toString());
+
+		assertTrue(pageTokens.putIfAbsentOrStale("/app/a.html", "b"));
+		assertFalse(pageTokens.putIfAbsentOrStale("/app/a.html", "c"));
+		assertEquals("b", pageTokens.get("/app/a.html"));
+		assertTrue(pageTokens.staleUris().isEmpty());
+	}
+
+	@Test
+	public void viewsAreReadOnly() {
+		PageTokenMap pageTokens = new PageTokenMap();
+		pageTokens.put("/app/a.html", "a");
+
+		try {
+			pageTokens.entrySet().iterator().next().setValue("b");
+			fail("the entry can be changed");
+		} catch (UnsupportedOperationException expected) {
+			//the generation would not be updated
+		}
+		try {
+			pageTokens.keySet().remove("/app/a.html");
+			fail("the key set can be changed");
+		} catch (UnsupportedOperationException expected) {
+			//use remove()
+		}
+		try {
+			pageTokens.values().remove("a");
+			fail("the values can be changed");
+		} catch (UnsupportedOperationException expected) {
+			//use remove()
+		}
+		assertEquals("a", pageTokens.get("/app/a.html"));
+	}
+
+	@Test
+	public void concurrentRequestsOfASessionAgreeOnTheRegeneratedTokens() throws Exception {
+		final PageTokenMap pageTokens = new PageTokenMap();
+		for (int i = 0; i < URIS; i++) {
+			pageTokens.put("/app/page" + i + ".html", "initial");
+		}
+		final CsrfGuard csrfGuard = CsrfGuard.getInstance();
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int round = 0; round < 100; round++) {
+				pageTokens.rotate();
+
+				/** like verifyPageToken, getTokenValue and writePageTokens of requests running at once **/
+				List<Future<List<String>>> seen = new ArrayList<Future<List<String>>>();
+				for (int thread = 0; thread < THREADS; thread++) {
+					final String threadToken = "thread" + thread;
+					final boolean refreshAll = thread % 2 == 0;
+					seen.add(executor.submit(new Callable<List<String>>() {
+
+						public List<String> call() throws Exception {
+							barrier.await(10, TimeUnit.SECONDS);
+							if (refreshAll) {
+								csrfGuard.refreshPageTokens(pageTokens);
+							}
+							List<String> tokens = new ArrayList<String>();
+							for (int i = 0; i < URIS; i++) {
+								String uri = "/app/page" + i + ".html";
+								if (!pageTokens.isCurrent(uri)) {
+									pageTokens.putIfAbsentOrStale(uri, threadToken);
+								}
+								tokens.add(pageTokens.get(uri));
+							}
+							for (Map.Entry<String, String> entry : pageTokens.entrySet()) {
+								tokens.add(entry.getValue());
+							}
+							return tokens.subList(0, URIS);
+						}
+					}));
+				}
+
+				List<String> first = seen.get(0).get(10, TimeUnit.SECONDS);
+				for (Future<List<String>> tokens : seen) {
+					assertEquals(first, tokens.get(10, TimeUnit.SECONDS));
+				}
+				assertTrue(pageTokens.staleUris().isEmpty());
+				assertFalse(first.contains("initial"));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
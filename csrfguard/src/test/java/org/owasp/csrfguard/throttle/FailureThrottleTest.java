@@ -0,0 +1,130 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.throttle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Test;
+import org.owasp.csrfguard.Mocks;
+
+public class FailureThrottleTest {
+
+	@Test
+	public void blocksAfterMaxFailures() {
+		FailureThrottle throttle = new FailureThrottle(3, 60, 60, FailureThrottle.Key.RemoteAddr);
+		HttpServletRequest request = request("10.0.0.1", null);
+		for (int i = 0; i < 3; i++) {
+			throttle.failed(request);
+			assertFalse(throttle.isBlocked(request));
+		}
+		throttle.failed(request);
+		assertTrue(throttle.isBlocked(request));
+		assertFalse(throttle.isBlocked(request("10.0.0.2", null)));
+		assertEquals(1, throttle.getBlocked().size());
+		assertTrue(throttle.getBlocked().containsKey("10.0.0.1"));
+
+		assertTrue(throttle.unblock("10.0.0.1"));
+		assertFalse(throttle.isBlocked(request));
+	}
+
+	@Test
+	public void blockEnds() throws InterruptedException {
+		FailureThrottle throttle = new FailureThrottle(1, 60, 1, FailureThrottle.Key.RemoteAddr);
+		HttpServletRequest request = request("10.0.0.1", null);
+		throttle.failed(request);
+		throttle.failed(request);
+		assertTrue(throttle.isBlocked(request));
+
+		Thread.sleep(1100);
+		assertFalse(throttle.isBlocked(request));
+		assertTrue(throttle.getBlocked().isEmpty());
+	}
+
+	@Test
+	public void failuresOutsideTheWindowAreForgotten() throws InterruptedException {
+		FailureThrottle throttle = new FailureThrottle(3, 1, 60, FailureThrottle.Key.RemoteAddr);
+		HttpServletRequest request = request("10.0.0.1", null);
+		for (int i = 0; i < 3; i++) {
+			throttle.failed(request);
+		}
+
+		/** two windows later the earlier failures are out of the sliding window **/
+		Thread.sleep(2100);
+		throttle.failed(request);
+		assertFalse(throttle.isBlocked(request));
+	}
+
+	@Test
+	public void sessionKeyBlocksTheSessionOnly() {
+		FailureThrottle throttle = new FailureThrottle(1, 60, 60, FailureThrottle.Key.SessionId);
+		HttpSession session = Mocks.session();
+		HttpServletRequest request = request("10.0.0.1", session);
+		throttle.failed(request);
+		throttle.failed(request);
+		assertTrue(throttle.isBlocked(request));
+
+		/** same address, other session **/
+		assertFalse(throttle.isBlocked(request("10.0.0.1", Mocks.session())));
+	}
+
+	@Test
+	public void sessionKeyIgnoresRequestsWithoutAValidSession() {
+		FailureThrottle throttle = new FailureThrottle(1, 60, 60, FailureThrottle.Key.SessionId);
+		HttpServletRequest request = request("10.0.0.1", null);
+		for (int i = 0; i < 10; i++) {
+			throttle.failed(request);
+		}
+		assertFalse(throttle.isBlocked(request));
+		assertTrue(throttle.getBlocked().isEmpty());
+	}
+
+	/**
+	 * @param remoteAddr
+	 * @param session valid session of the request, or null if none
+	 * @return the request
+	 */
+	private static HttpServletRequest request(String remoteAddr, HttpSession session) {
+		Map<String, Object> answers = new HashMap<String, Object>();
+		answers.put("getRemoteAddr", remoteAddr);
+		answers.put("getSession", session);
+		answers.put("isRequestedSessionIdValid", session != null);
+		/** a client chosen id, which the session key must not use **/
+		answers.put("getRequestedSessionId", "requested");
+		return Mocks.mock(HttpServletRequest.class, answers);
+	}
+
+}
@@ -0,0 +1,124 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.throttle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SlidingCountMinSketchTest {
+
+	@Test
+	public void countsEachKey() {
+		SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, TimeUnit.MINUTES.toNanos(1));
+		assertEquals(1, sketch.add("a"));
+		assertEquals(2, sketch.add("a"));
+		assertEquals(3, sketch.add("a"));
+		assertEquals(1, sketch.add("b"));
+		assertEquals(3, sketch.count("a"));
+		assertEquals(0, sketch.count("c"));
+	}
+
+	@Test
+	public void keysWithTheSameHashCodeAreCountedApart() {
+		SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, TimeUnit.MINUTES.toNanos(1));
+		/** these all have the same String.hashCode() **/
+		assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+		assertEquals("AaAa".hashCode(), "AaBB".hashCode());
+		for (int i = 0; i < 10; i++) {
+			sketch.add("AaAa");
+		}
+		assertEquals(10, sketch.count("AaAa"));
+		assertEquals(0, sketch.count("BBBB"));
+		assertEquals(0, sketch.count("AaBB"));
+		assertEquals(0, sketch.count("BBAa"));
+	}
+
+	@Test
+	public void countsAreNeverTooLow() {
+		SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, TimeUnit.MINUTES.toNanos(1));
+		for (int i = 0; i < 50; i++) {
+			sketch.add("hot");
+		}
+		/** many more keys than cells, they share cells with each other and with the hot key **/
+		for (int i = 0; i < 20000; i++) {
+			sketch.add("key" + i);
+		}
+		assertTrue(sketch.count("hot") >= 50);
+		for (int i = 0; i < 20000; i++) {
+			assertTrue(sketch.count("key" + i) >= 1);
+		}
+	}
+
+	@Test
+	public void conservativeUpdateKeepsOtherKeysLow() {
+		SlidingCountMinSketch sketch = new SlidingCountMinSketch(16384, TimeUnit.MINUTES.toNanos(1));
+		for (int i = 0; i < 100000; i++) {
+			sketch.add("noise" + i);
+		}
+		int overFive = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (sketch.count("noise" + i) > 5) {
+				overFive++;
+			}
+		}
+		assertEquals(0, overFive);
+	}
+
+	@Test
+	public void previousWindowFadesOut() throws InterruptedException {
+		SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, TimeUnit.SECONDS.toNanos(1));
+		for (int i = 0; i < 10; i++) {
+			sketch.add("a");
+		}
+
+		/** in the next window, part of the previous one is still counted **/
+		Thread.sleep(1200);
+		int count = sketch.count("a");
+		assertTrue("count " + count, count > 0 && count < 10);
+
+		/** two windows later nothing is left **/
+		Thread.sleep(2100);
+		assertEquals(0, sketch.count("a"));
+		assertEquals(1, sketch.add("a"));
+	}
+
+	@Test
+	public void clearForgetsTheCounts() {
+		SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, TimeUnit.MINUTES.toNanos(1));
+		sketch.add("a");
+		sketch.add("a");
+		sketch.clear();
+		assertEquals(0, sketch.count("a"));
+	}
+
+}
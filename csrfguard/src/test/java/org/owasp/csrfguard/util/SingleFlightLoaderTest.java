@@ -0,0 +1,119 @@
+/**
+ * The OWASP CSRFGuard Project, BSD License
+ * Eric Sheridan (eric@infraredsecurity.com), Copyright (c) 2011 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of OWASP nor the names of its contributors may be used
+ *       to endorse or promote products derived from this software without specific
+ *       prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.owasp.csrfguard.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightLoaderTest {
+
+	@Test(timeout = 10000)
+	public void nestedLoadOnTheLoadingThreadRunsTheLoaderAgain() {
+		final SingleFlightLoader<String> loader = new SingleFlightLoader<String>();
+		final AtomicInteger depth = new AtomicInteger();
+
+		String result = loader.load(new Callable<String>() {
+
+			public String call() {
+				depth.incrementAndGet();
+				/** e.g. config code calling CsrfGuard.getInstance() while the config is built **/
+				String nested = loader.load(new Callable<String>() {
+
+					public String call() {
+						depth.incrementAndGet();
+						return "inner";
+					}
+				});
+				return "outer(" + nested + ")";
+			}
+		});
+
+		assertEquals("outer(inner)", result);
+		assertEquals(2, depth.get());
+	}
+
+	@Test(timeout = 10000)
+	public void concurrentCallersShareOneLoad() throws Exception {
+		final SingleFlightLoader<Integer> loader = new SingleFlightLoader<Integer>();
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Integer> slowLoad = new Callable<Integer>() {
+
+			public Integer call() throws InterruptedException {
+				loading.countDown();
+				release.await();
+				return loads.incrementAndGet();
+			}
+		};
+
+		Thread first = new Thread(new Runnable() {
+
+			public void run() {
+				loader.load(slowLoad);
+			}
+		});
+		first.start();
+		assertEquals(true, loading.await(5, TimeUnit.SECONDS));
+
+		final AtomicInteger secondResult = new AtomicInteger();
+		Thread second = new Thread(new Runnable() {
+
+			public void run() {
+				secondResult.set(loader.load(slowLoad));
+			}
+		});
+		second.start();
+		/** give the second caller time to find the load in flight **/
+		Thread.sleep(100);
+		release.countDown();
+		first.join();
+		second.join();
+
+		assertEquals(1, loads.get());
+		assertEquals(1, secondResult.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void loaderExceptionIsRethrown() {
+		new SingleFlightLoader<String>().load(new Callable<String>() {
+
+			public String call() {
+				throw new IllegalArgumentException("bad config");
+			}
+		});
+	}
+
+}